@@ -0,0 +1,107 @@
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+// Approximate WordCount: top-K words and the number of distinct words
+// without shuffling every distinct word. Each map task feeds its words into
+// a WordSketchWritable and emits it once; a single reducer merges the
+// sketches and writes a report:
+//
+//   tokens      total words
+//   distinct    HyperLogLog estimate, +- standard error
+//   error       Count-Min additive error bound and its confidence
+//   top         word, Count-Min estimate, Space-Saving upper and lower bound
+//
+// Accuracy and memory are set with the wordcount.approx.* keys of
+// WordSketchWritable; wordcount.approx.topk (default 20) is the number of
+// words reported.
+public class ApproximateWordCount {
+
+    public static final String TOP_K = "wordcount.approx.topk";
+
+    public static class SketchMapper extends Mapper<Object, Text, NullWritable, WordSketchWritable> {
+        private Utf8Tokenizer words;
+        private WordSketchWritable sketch;
+        private final Text word = new Text();
+
+        @Override
+        protected void setup(Context context) {
+            words = new Utf8Tokenizer(context.getConfiguration());
+            sketch = new WordSketchWritable(context.getConfiguration());
+        }
+
+        public void map(Object key, Text value, Context context) {
+            words.reset(value);
+            while (words.next(word)) {
+                sketch.add(word);
+            }
+        }
+
+        @Override
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            context.write(NullWritable.get(), sketch);
+        }
+    }
+
+    public static class SketchReducer extends Reducer<NullWritable, WordSketchWritable, Text, Text> {
+        public void reduce(NullWritable key, Iterable<WordSketchWritable> values, Context context)
+                throws IOException, InterruptedException {
+            Configuration conf = context.getConfiguration();
+            WordSketchWritable total = null;
+            for (WordSketchWritable val : values) {
+                // values are reused by the framework: keep a copy of the first
+                if (total == null) {
+                    total = WritableUtils.clone(val, conf);
+                } else {
+                    total.merge(val);
+                }
+            }
+
+            CountMinSketch frequencies = total.frequencies();
+            HyperLogLog distinct = total.distinct();
+            context.write(new Text("tokens"), new Text(Long.toString(frequencies.total())));
+            context.write(new Text("distinct"), new Text(distinct.estimate()
+                    + "\t+-" + String.format("%.2f%%", distinct.relativeError() * 100)));
+            context.write(new Text("error"), new Text(String.format("+%.0f\twith probability %.4f",
+                    frequencies.errorBound(), frequencies.confidence())));
+            for (SpaceSaving.Counter c : total.heavyHitters().top(conf.getInt(TOP_K, 20))) {
+                // both sketches overestimate, so the smaller upper bound is the better estimate
+                long estimate = Math.min(c.getCount(), total.estimate(c.getItem()));
+                context.write(new Text("top"), new Text(c.getItem() + "\t" + estimate
+                        + "\t" + c.getCount() + "\t" + (c.getCount() - c.getError())));
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Configuration conf = new Configuration();
+        String[] rest = new GenericOptionsParser(conf, args).getRemainingArgs();
+        if (rest.length < 2) {
+            System.err.println("Usage: ApproximateWordCount [-D wordcount.approx.topk=K] <input> <output>");
+            System.exit(2);
+        }
+
+        Job job = Job.getInstance(conf, "approximate wordcount");
+        job.setJarByClass(ApproximateWordCount.class);
+        job.setMapperClass(SketchMapper.class);
+        job.setReducerClass(SketchReducer.class);
+        job.setNumReduceTasks(1);
+        job.setMapOutputKeyClass(NullWritable.class);
+        job.setMapOutputValueClass(WordSketchWritable.class);
+        job.setOutputKeyClass(Text.class);
+        job.setOutputValueClass(Text.class);
+        FileInputFormat.addInputPath(job, new Path(rest[0]));
+        FileOutputFormat.setOutputPath(job, new Path(rest[1]));
+        System.exit(job.waitForCompletion(true) ? 0 : 1);
+    }
+}
@@ -0,0 +1,151 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+// Open-addressing hash table from UTF-8 byte strings to int counts.
+// Keys are copied into a single byte arena and entries live in parallel
+// primitive arrays, so counting a token that is already present allocates nothing.
+public class BytesCountTable {
+
+    public interface Visitor {
+        void visit(byte[] bytes, int start, int len, int count) throws IOException, InterruptedException;
+    }
+
+    private static final float LOAD_FACTOR = 0.7f;
+
+    // slot -> entry index + 1 (0 marks an empty slot)
+    private int[] slots;
+
+    // per-entry arrays
+    private int[] hashes;
+    private int[] offsets;
+    private int[] lengths;
+    private int[] counts;
+    private int size;
+
+    private byte[] arena;
+    private int arenaUsed;
+
+    private final int initialEntries;
+    private final long initialBytes;
+
+    public BytesCountTable(int expectedEntries) {
+        initialEntries = Math.max(16, expectedEntries);
+        allocate(initialEntries);
+        initialBytes = memoryBytes();
+    }
+
+    private void allocate(int expectedEntries) {
+        int capacity = Integer.highestOneBit((int) (expectedEntries / LOAD_FACTOR) - 1) << 1;
+        slots = new int[capacity];
+        hashes = new int[expectedEntries];
+        offsets = new int[expectedEntries];
+        lengths = new int[expectedEntries];
+        counts = new int[expectedEntries];
+        arena = new byte[expectedEntries * 8];
+    }
+
+    public void increment(byte[] bytes, int start, int len, int delta) {
+        int hash = hash(bytes, start, len);
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (true) {
+            int entry = slots[slot] - 1;
+            if (entry < 0) {
+                break;
+            }
+            if (hashes[entry] == hash && lengths[entry] == len
+                    && equal(arena, offsets[entry], bytes, start, len)) {
+                counts[entry] += delta;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (size == hashes.length) {
+            growEntries();
+        }
+        if (arenaUsed + len > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaUsed + len));
+        }
+        System.arraycopy(bytes, start, arena, arenaUsed, len);
+        hashes[size] = hash;
+        offsets[size] = arenaUsed;
+        lengths[size] = len;
+        counts[size] = delta;
+        arenaUsed += len;
+        slots[slot] = ++size;
+
+        if (size > slots.length * LOAD_FACTOR) {
+            rehash(slots.length * 2);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Approximate heap footprint of the table's arrays, used to enforce a memory budget.
+    // After clear() this is back to the footprint of a new table.
+    public long memoryBytes() {
+        return arena.length + 4L * slots.length + 16L * hashes.length;
+    }
+
+    public void forEach(Visitor visitor) throws IOException, InterruptedException {
+        for (int i = 0; i < size; i++) {
+            visitor.visit(arena, offsets[i], lengths[i], counts[i]);
+        }
+    }
+
+    // Drops all entries. The arrays are kept for reuse while they are still
+    // at their initial size; grown ones are given back, so a table flushed for
+    // going over its budget does not stay over it.
+    public void clear() {
+        if (memoryBytes() > initialBytes) {
+            allocate(initialEntries);
+        } else {
+            Arrays.fill(slots, 0);
+        }
+        size = 0;
+        arenaUsed = 0;
+    }
+
+    private void growEntries() {
+        int capacity = hashes.length * 2;
+        hashes = Arrays.copyOf(hashes, capacity);
+        offsets = Arrays.copyOf(offsets, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        counts = Arrays.copyOf(counts, capacity);
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < size; i++) {
+            int slot = hashes[i] & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = i + 1;
+        }
+    }
+
+    private static boolean equal(byte[] a, int aStart, byte[] b, int bStart, int len) {
+        for (int i = 0; i < len; i++) {
+            if (a[aStart + i] != b[bStart + i]) return false;
+        }
+        return true;
+    }
+
+    // FNV-1a with a final avalanche step so linear probing sees well-spread low bits
+    static int hash(byte[] bytes, int start, int len) {
+        int h = 0x811c9dc5;
+        for (int i = start; i < start + len; i++) {
+            h ^= bytes[i];
+            h *= 0x01000193;
+        }
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h;
+    }
+}
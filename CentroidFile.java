@@ -0,0 +1,120 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+// Centroid files shared by the KMeans drivers and mappers.
+// One cluster per line: "id<TAB>c1,c2,...", which is exactly what the
+// reducers write through TextOutputFormat. Lines without an id ("c1,c2,...")
+// are numbered in file order, so a hand-written seed file works too.
+public class CentroidFile {
+
+    public static double[][] read(FileSystem fs, Path path) throws IOException {
+        List<double[]> centroids = new ArrayList<double[]>();
+        readInto(fs, path, centroids);
+        return centroids.toArray(new double[centroids.size()][]);
+    }
+
+    // Reads every part-* file of a job output directory. Clusters that got no
+    // points in the last pass have no reducer output and keep their previous centroid.
+    public static double[][] readOutput(FileSystem fs, Path dir, double[][] previous) throws IOException {
+        return readOutput(fs, dir, "part-", previous);
+    }
+
+    // Same, for the files of a named output ("<name>-r-00000", ...)
+    public static double[][] readOutput(FileSystem fs, Path dir, String prefix, double[][] previous)
+            throws IOException {
+        List<double[]> centroids = new ArrayList<double[]>();
+        for (double[] c : previous) {
+            centroids.add(c.clone());
+        }
+        for (FileStatus status : fs.listStatus(dir)) {
+            if (status.getPath().getName().startsWith(prefix)) {
+                readInto(fs, status.getPath(), centroids);
+            }
+        }
+        return centroids.toArray(new double[centroids.size()][]);
+    }
+
+    public static void write(FileSystem fs, Path path, double[][] centroids) throws IOException {
+        FSDataOutputStream out = fs.create(path, true);
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        try {
+            for (int i = 0; i < centroids.length; i++) {
+                writer.write(i + "\t" + format(centroids[i]) + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    // Largest Euclidean distance any centroid moved between two passes.
+    public static double maxShift(double[][] before, double[][] after) {
+        double max = 0;
+        for (int i = 0; i < Math.min(before.length, after.length); i++) {
+            double dist = 0;
+            for (int j = 0; j < before[i].length; j++) {
+                double d = before[i][j] - after[i][j];
+                dist += d * d;
+            }
+            max = Math.max(max, Math.sqrt(dist));
+        }
+        return max;
+    }
+
+    public static String format(double[] point) {
+        StringBuilder sb = new StringBuilder();
+        for (int j = 0; j < point.length; j++) {
+            if (j > 0) sb.append(',');
+            sb.append(point[j]);
+        }
+        return sb.toString();
+    }
+
+    public static double[] parse(String csv) {
+        String[] parts = csv.split(",");
+        double[] point = new double[parts.length];
+        for (int j = 0; j < parts.length; j++) {
+            point[j] = Double.parseDouble(parts[j]);
+        }
+        return point;
+    }
+
+    private static void readInto(FileSystem fs, Path path, List<double[]> centroids) throws IOException {
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(fs.open(path), StandardCharsets.UTF_8));
+        try {
+            String line;
+            int next = 0;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) continue;
+
+                int tab = line.indexOf('\t');
+                int id = tab < 0 ? next : Integer.parseInt(line.substring(0, tab).trim());
+                double[] point = parse(line.substring(tab + 1).trim());
+                while (centroids.size() <= id) {
+                    centroids.add(null);
+                }
+                centroids.set(id, point);
+                next = id + 1;
+            }
+        } finally {
+            reader.close();
+        }
+        for (int i = 0; i < centroids.size(); i++) {
+            if (centroids.get(i) == null) {
+                throw new IOException("Centroid file " + path + " has no entry for cluster " + i);
+            }
+        }
+    }
+}
@@ -0,0 +1,266 @@
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.apache.hadoop.conf.Configuration;
+
+// Nearest-centroid search for the KMeans mappers. Built once per task, it
+// avoids most of the K distance computations of a brute-force scan:
+//
+//  - every centroid knows the other centroids sorted by distance to it, so
+//    scanning outwards from the current best b can stop at the first centroid
+//    c with d(b,c) > 2 d(x,b): by the triangle inequality no later centroid
+//    can be closer (Elkan's lemma, as used by sort-means). A closer centroid
+//    found on the way becomes the new b and the scan restarts from it;
+//  - if d(x,b) < half the distance from b to its closest centroid, b is
+//    the answer without looking at any other centroid (Hamerly's bound);
+//  - the guess is the previous point's centroid, which is usually right for
+//    input that is grouped at all.
+//
+// For large K in low dimension a KD-tree over the centroids is used instead.
+// Small K is cheaper to scan outright, so nearest(points, n, ...) assigns
+// whole batches with DistanceKernel's tiled brute force below
+// kmeans.prune.min.k centroids.
+//
+// Centroids are stored as one row-major double[] and all distances go
+// through DistanceKernel. Results are identical to a brute-force scan,
+// including ties, which go to the lowest centroid index.
+public class CentroidIndex {
+
+    // Use the KD-tree once K reaches this many centroids (negative disables it)
+    public static final String KD_TREE_MIN_K = "kmeans.kdtree.min.k";
+    // ... and only up to this many dimensions, above which it prunes poorly
+    public static final String KD_TREE_MAX_DIMS = "kmeans.kdtree.max.dims";
+    // Batches below this many centroids are assigned by brute force
+    public static final String PRUNE_MIN_K = "kmeans.prune.min.k";
+
+    private final double[] matrix;
+    private final int k;
+    private final int dims;
+    private final DistanceKernel kernel;
+    private int pruneMinK = 32;
+
+    // neighbours[c] = other centroids ordered by distance from c, neighbourDist[c] = those distances
+    private int[][] neighbours;
+    private double[][] neighbourDist;
+    // half the distance from each centroid to its closest other centroid
+    private double[] halfNearest;
+
+    private KdNode kdRoot;
+    // running best of the current KD-tree search
+    private int kdBest;
+    private double kdBestSq;
+
+    private int last;
+    private double lastBestSq;
+    private long distanceComputations;
+
+    public CentroidIndex(double[][] centroids) {
+        this(centroids, false, DistanceKernel.get(true));
+    }
+
+    public CentroidIndex(double[][] centroids, boolean useKdTree, DistanceKernel kernel) {
+        this.k = centroids.length;
+        this.dims = centroids[0].length;
+        this.kernel = kernel;
+        this.matrix = new double[k * dims];
+        for (int i = 0; i < k; i++) {
+            System.arraycopy(centroids[i], 0, matrix, i * dims, dims);
+        }
+        if (useKdTree) {
+            int[] ids = new int[k];
+            for (int i = 0; i < k; i++) ids[i] = i;
+            kdRoot = build(ids, 0, k, 0);
+        } else {
+            buildNeighbourTables();
+        }
+    }
+
+    public static CentroidIndex create(Configuration conf, double[][] centroids) {
+        int minK = conf.getInt(KD_TREE_MIN_K, 128);
+        int maxDims = conf.getInt(KD_TREE_MAX_DIMS, 4);
+        boolean kd = minK >= 0 && centroids.length >= minK && centroids[0].length <= maxDims;
+        CentroidIndex index = new CentroidIndex(centroids, kd, DistanceKernel.create(conf));
+        index.pruneMinK = conf.getInt(PRUNE_MIN_K, index.pruneMinK);
+        return index;
+    }
+
+    public int size() {
+        return k;
+    }
+
+    public int dimensions() {
+        return dims;
+    }
+
+    public double distanceSq(double[] point, int centroid) {
+        return kernel.distanceSq(point, 0, matrix, centroid * dims, dims);
+    }
+
+    // Assigns n points stored row-major in points; fills assignments[0..n)
+    // and the matching squared distances in bestSq[0..n).
+    public void nearest(double[] points, int n, int[] assignments, double[] bestSq) {
+        if (kdRoot == null && k < pruneMinK) {
+            kernel.nearest(points, n, matrix, k, dims, assignments, bestSq);
+            distanceComputations += (long) n * k;
+            return;
+        }
+        for (int p = 0; p < n; p++) {
+            assignments[p] = nearest(points, p * dims);
+            bestSq[p] = lastBestSq;
+        }
+    }
+
+    // Number of point-to-centroid distances evaluated so far
+    public long distanceComputations() {
+        return distanceComputations;
+    }
+
+    public int nearest(double[] point) {
+        return nearest(point, 0);
+    }
+
+    // Nearest centroid of the point stored at points[offset .. offset + dims)
+    public int nearest(double[] point, int offset) {
+        int best = last;
+        double bestSq = kernel.distanceSq(point, offset, matrix, best * dims, dims);
+        distanceComputations++;
+
+        if (kdRoot != null) {
+            best = search(kdRoot, point, offset, best, bestSq);
+            bestSq = kdBestSq;
+        } else if (k > 1) {
+            // Scan outwards from the current best; whenever a closer centroid
+            // turns up, restart from it since its neighbour list prunes harder.
+            double bestD = Math.sqrt(bestSq);
+            int from = -1;
+            while (from != best && bestD >= halfNearest[best]) {
+                from = best;
+                int[] order = neighbours[from];
+                double[] dist = neighbourDist[from];
+                double limit = 2 * bestD;
+                for (int m = 0; m < order.length && dist[m] <= limit; m++) {
+                    int c = order[m];
+                    double dSq = kernel.distanceSq(point, offset, matrix, c * dims, dims);
+                    distanceComputations++;
+                    if (dSq < bestSq || dSq == bestSq && c < best) {
+                        bestSq = dSq;
+                        best = c;
+                        bestD = Math.sqrt(dSq);
+                        break;
+                    }
+                }
+            }
+        }
+        last = best;
+        lastBestSq = bestSq;
+        return best;
+    }
+
+    public static double distanceSq(double[] a, double[] b) {
+        double sum = 0;
+        for (int j = 0; j < a.length; j++) {
+            double d = a[j] - b[j];
+            sum += d * d;
+        }
+        return sum;
+    }
+
+    private void buildNeighbourTables() {
+        neighbours = new int[k][];
+        neighbourDist = new double[k][];
+        halfNearest = new double[k];
+
+        double[][] cc = new double[k][k];
+        for (int a = 0; a < k; a++) {
+            for (int b = a + 1; b < k; b++) {
+                cc[a][b] = cc[b][a] = Math.sqrt(kernel.distanceSq(matrix, a * dims, matrix, b * dims, dims));
+            }
+        }
+
+        for (int a = 0; a < k; a++) {
+            final double[] row = cc[a];
+            Integer[] others = new Integer[k - 1];
+            for (int b = 0, n = 0; b < k; b++) {
+                if (b != a) others[n++] = b;
+            }
+            Arrays.sort(others, new Comparator<Integer>() {
+                public int compare(Integer x, Integer y) {
+                    int c = Double.compare(row[x], row[y]);
+                    return c != 0 ? c : Integer.compare(x, y);
+                }
+            });
+
+            neighbours[a] = new int[k - 1];
+            neighbourDist[a] = new double[k - 1];
+            for (int m = 0; m < k - 1; m++) {
+                neighbours[a][m] = others[m];
+                neighbourDist[a][m] = row[others[m]];
+            }
+            halfNearest[a] = k > 1 ? neighbourDist[a][0] / 2 : Double.MAX_VALUE;
+        }
+    }
+
+    // ---------------- KD-tree over the centroids ----------------
+
+    private static class KdNode {
+        int centroid;
+        int axis;
+        KdNode left;
+        KdNode right;
+    }
+
+    private KdNode build(int[] ids, int from, int to, int depth) {
+        if (from >= to) return null;
+        int axis = depth % dims;
+        sortByAxis(ids, from, to, axis);
+        int mid = (from + to) >>> 1;
+
+        KdNode node = new KdNode();
+        node.centroid = ids[mid];
+        node.axis = axis;
+        node.left = build(ids, from, mid, depth + 1);
+        node.right = build(ids, mid + 1, to, depth + 1);
+        return node;
+    }
+
+    private void sortByAxis(int[] ids, int from, int to, final int axis) {
+        Integer[] boxed = new Integer[to - from];
+        for (int i = from; i < to; i++) boxed[i - from] = ids[i];
+        Arrays.sort(boxed, new Comparator<Integer>() {
+            public int compare(Integer x, Integer y) {
+                return Double.compare(matrix[x * dims + axis], matrix[y * dims + axis]);
+            }
+        });
+        for (int i = from; i < to; i++) ids[i] = boxed[i - from];
+    }
+
+    // Depth-first search with the usual splitting-plane pruning; the distance
+    // to the starting guess bounds the search from the beginning.
+    private int search(KdNode root, double[] point, int offset, int guess, double guessSq) {
+        kdBest = guess;
+        kdBestSq = guessSq;
+        visit(root, point, offset);
+        return kdBest;
+    }
+
+    private void visit(KdNode node, double[] point, int offset) {
+        if (node == null) return;
+
+        if (node.centroid != kdBest) {
+            double dSq = kernel.distanceSq(point, offset, matrix, node.centroid * dims, dims);
+            distanceComputations++;
+            if (dSq < kdBestSq || dSq == kdBestSq && node.centroid < kdBest) {
+                kdBestSq = dSq;
+                kdBest = node.centroid;
+            }
+        }
+
+        double diff = point[offset + node.axis] - matrix[node.centroid * dims + node.axis];
+        KdNode near = diff < 0 ? node.left : node.right;
+        KdNode far = diff < 0 ? node.right : node.left;
+        visit(near, point, offset);
+        if (diff * diff <= kdBestSq) {
+            visit(far, point, offset);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+import java.util.Random;
+
+// Compares brute-force nearest-centroid search with CentroidIndex on
+// synthetic clustered data and reports distance computations per point,
+// plus the time of the batched DistanceKernel scan.
+//
+//   java [--add-modules jdk.incubator.vector] CentroidIndexBenchmark [points] [seed]
+public class CentroidIndexBenchmark {
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 42L;
+
+        int[] ks = {2, 8, 32, 128, 512};
+        int[] dims = {2, 8, 32, 64};
+        DistanceKernel kernel = DistanceKernel.get(true);
+        System.out.println("Distance kernel: " + kernel.name());
+
+        System.out.printf("%6s %5s %12s %12s %12s %10s %10s %10s %10s%n", "K", "dims",
+                "brute/pt", "pruned/pt", "kdtree/pt", "brute ms", "batch ms", "pruned ms", "kdtree ms");
+
+        for (int d : dims) {
+            for (int k : ks) {
+                Random random = new Random(seed);
+                double[][] centroids = randomCentroids(random, k, d);
+                double[][] points = clusteredPoints(random, centroids, n);
+
+                int[] expected = new int[n];
+                long start = System.nanoTime();
+                for (int i = 0; i < n; i++) {
+                    expected[i] = bruteForce(kernel, centroids, points[i]);
+                }
+                long bruteMs = (System.nanoTime() - start) / 1000000;
+
+                long batchMs = runBatched(kernel, centroids, points, expected);
+
+                CentroidIndex pruned = new CentroidIndex(centroids, false, kernel);
+                long prunedMs = run(pruned, points, expected);
+
+                CentroidIndex kd = new CentroidIndex(centroids, true, kernel);
+                long kdMs = run(kd, points, expected);
+
+                System.out.printf("%6d %5d %12.2f %12.2f %12.2f %10d %10d %10d %10d%n",
+                        k, d, (double) k,
+                        (double) pruned.distanceComputations() / n,
+                        (double) kd.distanceComputations() / n,
+                        bruteMs, batchMs, prunedMs, kdMs);
+            }
+        }
+    }
+
+    private static long run(CentroidIndex index, double[][] points, int[] expected) {
+        long start = System.nanoTime();
+        for (int i = 0; i < points.length; i++) {
+            int nearest = index.nearest(points[i]);
+            if (nearest != expected[i]) {
+                throw new IllegalStateException("Point " + i + ": got centroid " + nearest
+                        + ", brute force found " + expected[i]);
+            }
+        }
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    // Flat row-major batches of 64 points through DistanceKernel.nearest
+    private static long runBatched(DistanceKernel kernel, double[][] centroids, double[][] points,
+                                   int[] expected) {
+        int k = centroids.length;
+        int dims = centroids[0].length;
+        double[] matrix = new double[k * dims];
+        for (int c = 0; c < k; c++) {
+            System.arraycopy(centroids[c], 0, matrix, c * dims, dims);
+        }
+        int batchSize = 64;
+        double[] batch = new double[batchSize * dims];
+        int[] assignments = new int[batchSize];
+        double[] bestSq = new double[batchSize];
+
+        long start = System.nanoTime();
+        for (int from = 0; from < points.length; from += batchSize) {
+            int n = Math.min(batchSize, points.length - from);
+            for (int p = 0; p < n; p++) {
+                System.arraycopy(points[from + p], 0, batch, p * dims, dims);
+            }
+            kernel.nearest(batch, n, matrix, k, dims, assignments, bestSq);
+            for (int p = 0; p < n; p++) {
+                if (assignments[p] != expected[from + p]) {
+                    throw new IllegalStateException("Point " + (from + p) + ": batch got centroid "
+                            + assignments[p] + ", brute force found " + expected[from + p]);
+                }
+            }
+        }
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    private static int bruteForce(DistanceKernel kernel, double[][] centroids, double[] point) {
+        int nearest = 0;
+        double minDist = Double.MAX_VALUE;
+        for (int i = 0; i < centroids.length; i++) {
+            double dist = kernel.distanceSq(point, 0, centroids[i], 0, point.length);
+            if (dist < minDist) {
+                minDist = dist;
+                nearest = i;
+            }
+        }
+        return nearest;
+    }
+
+    private static double[][] randomCentroids(Random random, int k, int dims) {
+        double[][] centroids = new double[k][dims];
+        for (double[] c : centroids) {
+            for (int j = 0; j < dims; j++) {
+                c[j] = random.nextDouble() * 100;
+            }
+        }
+        return centroids;
+    }
+
+    // Gaussian blobs around the centroids, in random order
+    private static double[][] clusteredPoints(Random random, double[][] centroids, int n) {
+        int dims = centroids[0].length;
+        double[][] points = new double[n][dims];
+        for (double[] p : points) {
+            double[] c = centroids[random.nextInt(centroids.length)];
+            for (int j = 0; j < dims; j++) {
+                p[j] = c[j] + random.nextGaussian() * 3;
+            }
+        }
+        return points;
+    }
+}
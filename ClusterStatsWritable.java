@@ -0,0 +1,124 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+// Sufficient statistics of one cluster: weight (number of points, fractional
+// once older data has been decayed), per-dimension sum and sum of squares.
+// Enough to recompute the centroid and the cluster's spread after merging in
+// new data, without going back to the points.
+//
+// Text form, as written by TextOutputFormat and the incremental model files:
+// "weight<TAB>s1,s2,...<TAB>q1,q2,..."
+public class ClusterStatsWritable implements Writable {
+
+    private double weight;
+    private double[] sum = new double[0];
+    private double[] sumSq = new double[0];
+
+    public ClusterStatsWritable() {
+    }
+
+    public ClusterStatsWritable(int dims) {
+        sum = new double[dims];
+        sumSq = new double[dims];
+    }
+
+    public double getWeight() {
+        return weight;
+    }
+
+    public int dimensions() {
+        return sum.length;
+    }
+
+    public void add(double[] point) {
+        for (int j = 0; j < sum.length; j++) {
+            double v = point[j];
+            sum[j] += v;
+            sumSq[j] += v * v;
+        }
+        weight++;
+    }
+
+    public void merge(ClusterStatsWritable other) {
+        if (sum.length != other.sum.length) {
+            if (weight != 0) {
+                throw new IllegalArgumentException("Cannot merge " + other.sum.length
+                        + "-dimensional statistics into " + sum.length + "-dimensional statistics");
+            }
+            sum = new double[other.sum.length];
+            sumSq = new double[other.sum.length];
+        }
+        for (int j = 0; j < sum.length; j++) {
+            sum[j] += other.sum[j];
+            sumSq[j] += other.sumSq[j];
+        }
+        weight += other.weight;
+    }
+
+    // Down-weights everything seen so far, e.g. by 0.9 per daily run
+    public void scale(double factor) {
+        for (int j = 0; j < sum.length; j++) {
+            sum[j] *= factor;
+            sumSq[j] *= factor;
+        }
+        weight *= factor;
+    }
+
+    public double[] centroid() {
+        double[] c = new double[sum.length];
+        for (int j = 0; j < sum.length; j++) {
+            c[j] = sum[j] / weight;
+        }
+        return c;
+    }
+
+    // Mean squared distance of the points to the centroid
+    public double variance() {
+        double v = 0;
+        for (int j = 0; j < sum.length; j++) {
+            double mean = sum[j] / weight;
+            v += sumSq[j] / weight - mean * mean;
+        }
+        return Math.max(v, 0);
+    }
+
+    public void write(DataOutput out) throws IOException {
+        WritableUtils.writeVInt(out, sum.length);
+        out.writeDouble(weight);
+        for (int j = 0; j < sum.length; j++) {
+            out.writeDouble(sum[j]);
+            out.writeDouble(sumSq[j]);
+        }
+    }
+
+    public void readFields(DataInput in) throws IOException {
+        int dims = WritableUtils.readVInt(in);
+        if (sum.length != dims) {
+            sum = new double[dims];
+            sumSq = new double[dims];
+        }
+        weight = in.readDouble();
+        for (int j = 0; j < dims; j++) {
+            sum[j] = in.readDouble();
+            sumSq[j] = in.readDouble();
+        }
+    }
+
+    public static ClusterStatsWritable parse(String text) {
+        String[] fields = text.trim().split("\t");
+        ClusterStatsWritable stats = new ClusterStatsWritable();
+        stats.weight = Double.parseDouble(fields[0]);
+        stats.sum = CentroidFile.parse(fields[1]);
+        stats.sumSq = CentroidFile.parse(fields[2]);
+        return stats;
+    }
+
+    @Override
+    public String toString() {
+        return weight + "\t" + CentroidFile.format(sum) + "\t" + CentroidFile.format(sumSq);
+    }
+}
@@ -0,0 +1,94 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+// Partial KMeans statistics of one cluster: the vector sum of its points and
+// how many there were. Map tasks emit one per cluster, reducers merge them.
+public class ClusterSumWritable implements Writable {
+
+    private double[] sum = new double[0];
+    private long count;
+
+    public ClusterSumWritable() {
+    }
+
+    public ClusterSumWritable(int dims) {
+        sum = new double[dims];
+    }
+
+    public double[] getSum() {
+        return sum;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void add(double[] point) {
+        add(point, 0);
+    }
+
+    // Adds the point stored at values[offset .. offset + dims)
+    public void add(double[] values, int offset) {
+        for (int j = 0; j < sum.length; j++) {
+            sum[j] += values[offset + j];
+        }
+        count++;
+    }
+
+    // Adds another partial into this one; the other instance may be reused afterwards
+    public void merge(ClusterSumWritable other) {
+        if (sum.length != other.sum.length) {
+            if (count != 0) {
+                throw new IllegalArgumentException("Cannot merge " + other.sum.length
+                        + "-dimensional sums into " + sum.length + "-dimensional sums");
+            }
+            sum = new double[other.sum.length];
+        }
+        for (int j = 0; j < sum.length; j++) {
+            sum[j] += other.sum[j];
+        }
+        count += other.count;
+    }
+
+    public void clear() {
+        Arrays.fill(sum, 0);
+        count = 0;
+    }
+
+    public double[] centroid() {
+        double[] c = new double[sum.length];
+        for (int j = 0; j < sum.length; j++) {
+            c[j] = sum[j] / count;
+        }
+        return c;
+    }
+
+    public void write(DataOutput out) throws IOException {
+        WritableUtils.writeVInt(out, sum.length);
+        for (double s : sum) {
+            out.writeDouble(s);
+        }
+        WritableUtils.writeVLong(out, count);
+    }
+
+    public void readFields(DataInput in) throws IOException {
+        int dims = WritableUtils.readVInt(in);
+        if (sum.length != dims) {
+            sum = new double[dims];
+        }
+        for (int j = 0; j < dims; j++) {
+            sum[j] = in.readDouble();
+        }
+        count = WritableUtils.readVLong(in);
+    }
+
+    @Override
+    public String toString() {
+        return CentroidFile.format(sum) + "," + count;
+    }
+}
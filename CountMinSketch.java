@@ -0,0 +1,99 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+// Count-Min sketch over 64-bit item hashes. width = ceil(e / epsilon) and
+// depth = ceil(ln(1 / delta)): an estimate never undercounts and exceeds the
+// true count by more than epsilon * total with probability at most delta.
+// Row i uses the hash h1 + i * h2 (both halves of the 64-bit hash).
+// Sketches with the same width and depth merge by adding their tables.
+public class CountMinSketch implements Writable {
+
+    private int width;
+    private int depth;
+    private long[] table = new long[0];
+    private long total;
+
+    public CountMinSketch() {
+    }
+
+    public CountMinSketch(double epsilon, double delta) {
+        this((int) Math.ceil(Math.E / epsilon), (int) Math.ceil(Math.log(1 / delta)));
+    }
+
+    public CountMinSketch(int width, int depth) {
+        this.width = width;
+        this.depth = depth;
+        table = new long[width * depth];
+    }
+
+    public void add(long hash, long count) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < depth; i++) {
+            int column = ((h1 + i * h2) & Integer.MAX_VALUE) % width;
+            table[i * width + column] += count;
+        }
+        total += count;
+    }
+
+    public long estimate(long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            int column = ((h1 + i * h2) & Integer.MAX_VALUE) % width;
+            min = Math.min(min, table[i * width + column]);
+        }
+        return min;
+    }
+
+    public long total() {
+        return total;
+    }
+
+    // Additive error bound epsilon * total, holding with probability 1 - delta
+    public double errorBound() {
+        return Math.E / width * total;
+    }
+
+    public double confidence() {
+        return 1 - Math.exp(-depth);
+    }
+
+    public void merge(CountMinSketch other) {
+        if (other.width != width || other.depth != depth) {
+            throw new IllegalArgumentException("Cannot merge a " + other.width + "x" + other.depth
+                    + " sketch into a " + width + "x" + depth + " sketch");
+        }
+        for (int i = 0; i < table.length; i++) {
+            table[i] += other.table[i];
+        }
+        total += other.total;
+    }
+
+    // Mostly-zero tables: variable-length longs keep the shuffle small
+    public void write(DataOutput out) throws IOException {
+        WritableUtils.writeVInt(out, width);
+        WritableUtils.writeVInt(out, depth);
+        WritableUtils.writeVLong(out, total);
+        for (long cell : table) {
+            WritableUtils.writeVLong(out, cell);
+        }
+    }
+
+    public void readFields(DataInput in) throws IOException {
+        width = WritableUtils.readVInt(in);
+        depth = WritableUtils.readVInt(in);
+        total = WritableUtils.readVLong(in);
+        if (table.length != width * depth) {
+            table = new long[width * depth];
+        }
+        for (int i = 0; i < table.length; i++) {
+            table[i] = WritableUtils.readVLong(in);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.LineRecordReader;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.mapreduce.lib.partition.InputSampler;
+import org.apache.hadoop.mapreduce.lib.partition.TotalOrderPartitioner;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+// ORDER total_per_cust BY total_spent DESC from pcmds.txt, as a parallel
+// total-order sort of RetailAnalytics' total_per_customer output
+// ("customer_id,total" lines).
+//
+// The input is read as (total, customer) LongWritable pairs. A random sample
+// of totals is split into key ranges by InputSampler, TotalOrderPartitioner
+// sends each range to its own reducer and LongWritable.DecreasingComparator
+// sorts the raw serialized keys, so part-r-00000, part-r-00001, ... are each
+// sorted and together form one descending order. Set the reducer count with
+// -D mapreduce.job.reduces=N; left at its mapred-default.xml value the job
+// uses 4, since one reducer would make the partitioning pointless.
+public class CustomerSpendSort {
+
+    public static final String SAMPLE_FREQUENCY = "customersort.sample.frequency";
+    public static final String SAMPLE_MAX = "customersort.sample.max";
+    public static final String SAMPLE_SPLITS = "customersort.sample.splits";
+
+    // "customer_id,total" -> (total, customer_id); lines that are not two
+    // numbers are skipped
+    public static class SpendInputFormat extends FileInputFormat<LongWritable, LongWritable> {
+
+        @Override
+        public RecordReader<LongWritable, LongWritable> createRecordReader(InputSplit split,
+                                                                           TaskAttemptContext context) {
+            return new SpendRecordReader();
+        }
+    }
+
+    public static class SpendRecordReader extends RecordReader<LongWritable, LongWritable> {
+        private final LineRecordReader lines = new LineRecordReader();
+        private final LongWritable total = new LongWritable();
+        private final LongWritable customer = new LongWritable();
+
+        @Override
+        public void initialize(InputSplit split, TaskAttemptContext context) throws IOException {
+            lines.initialize(split, context);
+        }
+
+        @Override
+        public boolean nextKeyValue() throws IOException {
+            while (lines.nextKeyValue()) {
+                String line = lines.getCurrentValue().toString();
+                int comma = line.indexOf(',');
+                if (comma < 0) {
+                    continue;
+                }
+                try {
+                    customer.set(Long.parseLong(line.substring(0, comma).trim()));
+                    total.set(Long.parseLong(line.substring(comma + 1).trim()));
+                    return true;
+                } catch (NumberFormatException e) {
+                    // header or malformed line
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public LongWritable getCurrentKey() {
+            return total;
+        }
+
+        @Override
+        public LongWritable getCurrentValue() {
+            return customer;
+        }
+
+        @Override
+        public float getProgress() throws IOException {
+            return lines.getProgress();
+        }
+
+        @Override
+        public void close() throws IOException {
+            lines.close();
+        }
+    }
+
+    // Back to "customer_id,total", in descending total order
+    public static class SpendReducer extends Reducer<LongWritable, LongWritable, LongWritable, LongWritable> {
+        public void reduce(LongWritable total, Iterable<LongWritable> customers, Context context)
+                throws IOException, InterruptedException {
+            for (LongWritable customer : customers) {
+                context.write(customer, total);
+            }
+        }
+    }
+
+    public static boolean run(Configuration conf, Path input, Path output) throws Exception {
+        conf.set(TextOutputFormat.SEPARATOR, ",");
+        Job job = Job.getInstance(conf, "customer spend sort");
+        job.setJarByClass(CustomerSpendSort.class);
+        job.setInputFormatClass(SpendInputFormat.class);
+        job.setMapperClass(Mapper.class);
+        job.setReducerClass(SpendReducer.class);
+        job.setMapOutputKeyClass(LongWritable.class);
+        job.setMapOutputValueClass(LongWritable.class);
+        job.setOutputKeyClass(LongWritable.class);
+        job.setOutputValueClass(LongWritable.class);
+        job.setSortComparatorClass(LongWritable.DecreasingComparator.class);
+        String[] sources = job.getConfiguration().getPropertySources(MRJobConfig.NUM_REDUCES);
+        if (sources == null || Arrays.asList(sources).equals(Arrays.asList("mapred-default.xml"))) {
+            job.setNumReduceTasks(4);
+        }
+        FileInputFormat.addInputPath(job, input);
+        FileOutputFormat.setOutputPath(job, output);
+
+        if (job.getNumReduceTasks() > 1) {
+            // Sample cut points with the job's (descending) sort comparator
+            Path partitions = new Path(output.getParent(), output.getName() + "_partitions");
+            TotalOrderPartitioner.setPartitionFile(job.getConfiguration(), partitions);
+            InputSampler.Sampler<LongWritable, LongWritable> sampler =
+                    new InputSampler.RandomSampler<LongWritable, LongWritable>(
+                            conf.getDouble(SAMPLE_FREQUENCY, 0.1),
+                            conf.getInt(SAMPLE_MAX, 10000),
+                            conf.getInt(SAMPLE_SPLITS, 10));
+            InputSampler.writePartitionFile(job, sampler);
+            job.setPartitionerClass(TotalOrderPartitioner.class);
+            try {
+                return job.waitForCompletion(true);
+            } finally {
+                partitions.getFileSystem(conf).delete(partitions, false);
+            }
+        }
+        return job.waitForCompletion(true);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Configuration conf = new Configuration();
+        String[] rest = new GenericOptionsParser(conf, args).getRemainingArgs();
+        if (rest.length < 2) {
+            System.err.println("Usage: CustomerSpendSort [-D mapreduce.job.reduces=N] <total_per_customer> <output>");
+            System.exit(2);
+        }
+        System.exit(run(conf, new Path(rest[0]), new Path(rest[1])) ? 0 : 1);
+    }
+}
@@ -0,0 +1,85 @@
+import org.apache.hadoop.conf.Configuration;
+
+// Squared Euclidean distances between points and a flat, row-major centroid
+// matrix (centroid c occupies matrix[c * dims .. c * dims + dims)).
+//
+// This class is the scalar implementation. VectorDistanceKernel overrides
+// the inner loop with the jdk.incubator.vector API; it is picked up when the
+// JVM runs with --add-modules jdk.incubator.vector (add the flag to
+// mapreduce.map.java.opts) and kmeans.kernel.simd is not false. Otherwise the
+// scalar kernel is used.
+public class DistanceKernel {
+
+    public static final String SIMD = "kmeans.kernel.simd";
+
+    // Centroid rows processed per tile of a batch: about 16KB of doubles,
+    // so the tile stays in L1 while every point of the batch is scored against it
+    static final int TILE_DOUBLES = 2048;
+
+    private static final DistanceKernel SCALAR = new DistanceKernel();
+    private static DistanceKernel vector;
+    private static boolean vectorProbed;
+
+    public static DistanceKernel create(Configuration conf) {
+        return get(conf == null || conf.getBoolean(SIMD, true));
+    }
+
+    public static synchronized DistanceKernel get(boolean simd) {
+        if (!simd) {
+            return SCALAR;
+        }
+        if (!vectorProbed) {
+            vectorProbed = true;
+            try {
+                vector = (DistanceKernel) Class.forName("VectorDistanceKernel")
+                        .getDeclaredConstructor().newInstance();
+            } catch (Throwable e) {
+                // class or jdk.incubator.vector module not available
+                vector = null;
+            }
+        }
+        return vector != null ? vector : SCALAR;
+    }
+
+    public String name() {
+        return "scalar";
+    }
+
+    public double distanceSq(double[] points, int pointOffset, double[] matrix, int rowOffset, int dims) {
+        double sum = 0;
+        for (int j = 0; j < dims; j++) {
+            double d = points[pointOffset + j] - matrix[rowOffset + j];
+            sum += d * d;
+        }
+        return sum;
+    }
+
+    // Brute-force assignment of n points (row-major in points) to their nearest
+    // of k centroids. Centroids are visited in tiles so each tile is reused from
+    // cache by the whole batch. Ties go to the lowest centroid index.
+    public void nearest(double[] points, int n, double[] matrix, int k, int dims,
+                        int[] assignments, double[] bestSq) {
+        for (int p = 0; p < n; p++) {
+            bestSq[p] = Double.MAX_VALUE;
+            assignments[p] = 0;
+        }
+        int tile = Math.max(1, TILE_DOUBLES / Math.max(1, dims));
+        for (int c0 = 0; c0 < k; c0 += tile) {
+            int c1 = Math.min(k, c0 + tile);
+            for (int p = 0; p < n; p++) {
+                int pointOffset = p * dims;
+                double best = bestSq[p];
+                int bestC = assignments[p];
+                for (int c = c0; c < c1; c++) {
+                    double d = distanceSq(points, pointOffset, matrix, c * dims, dims);
+                    if (d < best) {
+                        best = d;
+                        bestC = c;
+                    }
+                }
+                bestSq[p] = best;
+                assignments[p] = bestC;
+            }
+        }
+    }
+}
@@ -1,9 +1,6 @@
-import java.io.*;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.fs.FSDataInputStream;
-import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileStatus;
 
 public class HDFSFileOperations {
@@ -26,28 +23,28 @@ public class HDFSFileOperations {
                 System.out.println("Directory already exists: " + dirPath.toString());
             }
 
-            // 3. Write to File
-            FSDataOutputStream outputStream = fs.create(filePath, true);
-            outputStream.writeUTF("Hello from Hadoop HDFS!\nThis is a demo file.\n");
-            outputStream.close();
+            // 3. Write to File (UTF-8 text, no writeUTF length prefix or 64KB limit)
+            HdfsStreams.Writer writer = new HdfsStreams.Writer(conf, fs.create(filePath, true), filePath.toString());
+            writer.write("Hello from Hadoop HDFS!\nThis is a demo file.\n");
+            writer.close();
             System.out.println("File written to HDFS: " + filePath.toString());
 
             // 4. Read File
             System.out.println("\nReading file contents:");
-            FSDataInputStream inputStream = fs.open(filePath);
-            BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
+            HdfsStreams.Reader reader = new HdfsStreams.Reader(conf, fs.open(filePath), filePath.toString());
             String line;
             while ((line = reader.readLine()) != null) {
                 System.out.println(line);
             }
             reader.close();
+            System.out.println(reader);
 
             // 5. Append to File (if append supported)
             if (fs.isFile(filePath)) {
                 System.out.println("\nAppending to file...");
-                FSDataOutputStream appendStream = fs.append(filePath);
-                appendStream.writeUTF("Appended text to this file.\n");
-                appendStream.close();
+                HdfsStreams.Writer appendWriter = new HdfsStreams.Writer(conf, fs.append(filePath), filePath.toString());
+                appendWriter.write("Appended text to this file.\n");
+                appendWriter.close();
                 System.out.println("Append completed.");
             }
 
@@ -60,8 +57,7 @@ public class HDFSFileOperations {
 
             // 7. Read again after append
             System.out.println("\nFile contents after append:");
-            inputStream = fs.open(filePath);
-            reader = new BufferedReader(new InputStreamReader(inputStream));
+            reader = new HdfsStreams.Reader(conf, fs.open(filePath), filePath.toString());
             while ((line = reader.readLine()) != null) {
                 System.out.println(line);
             }
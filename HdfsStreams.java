@@ -0,0 +1,384 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.StreamCapabilities;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+// Line-oriented reading and writing of large HDFS files, always in UTF-8.
+//
+// Reader fills one large buffer (direct by default) with read(ByteBuffer)
+// when the stream supports it, plain read(byte[]) otherwise, and splits
+// lines in place: nextLine() hands out a view of the buffer, so scanning a
+// file allocates nothing per line. Lines end at \n, \r\n or \r, like
+// LineRecordReader.
+//
+// Writer encodes straight into its own buffer and writes it out in
+// streams.buffer.kb pieces. streams.sync picks what happens every
+// streams.sync.mb and on close: none, hflush (visible to new readers) or
+// hsync (also on the DataNodes' disks).
+//
+// Both count their bytes and report MB/s.
+//
+//   HdfsStreams read <file>
+//   HdfsStreams copy <file> <target file>
+public class HdfsStreams {
+
+    public static final String BUFFER_KB = "streams.buffer.kb";
+    public static final String DIRECT = "streams.direct";
+    public static final String SYNC = "streams.sync";
+    public static final String SYNC_MB = "streams.sync.mb";
+
+    public enum SyncPolicy { NONE, HFLUSH, HSYNC }
+
+    // Bytes moved since open and the rate
+    static abstract class Throughput implements Closeable {
+        private final String name;
+        private final long start = System.nanoTime();
+        private long end;
+        protected long bytes;
+
+        Throughput(String name) {
+            this.name = name;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public double getSeconds() {
+            return ((end > 0 ? end : System.nanoTime()) - start) / 1e9;
+        }
+
+        public double getMegabytesPerSecond() {
+            return bytes / 1048576.0 / getSeconds();
+        }
+
+        protected void stop() {
+            if (end == 0) {
+                end = System.nanoTime();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d bytes in %.2f s (%.1f MB/s)", name, bytes, getSeconds(),
+                    getMegabytesPerSecond());
+        }
+    }
+
+    public static class Reader extends Throughput {
+        private final FSDataInputStream in;
+        private ByteBuffer buffer;
+        private boolean byteBufferReads;
+        private boolean eof;
+        private long lines;
+
+        // Unread data is buffer[pos .. limit); scan is where the search for
+        // the next terminator resumes after a refill
+        private int pos;
+        private int limit;
+        private int scan;
+
+        // The view handed out by nextLine(), and a copy area for direct buffers
+        private ByteBuffer line;
+        private byte[] scratch = new byte[256];
+
+        public Reader(Configuration conf, Path path) throws IOException {
+            this(conf, path.getFileSystem(conf).open(path, conf.getInt(BUFFER_KB, 1024) << 10), path.toString());
+        }
+
+        public Reader(Configuration conf, FSDataInputStream in, String name) {
+            super(name);
+            this.in = in;
+            int size = conf.getInt(BUFFER_KB, 1024) << 10;
+            byteBufferReads = in.hasCapability(StreamCapabilities.READBYTEBUFFER);
+            buffer = byteBufferReads && conf.getBoolean(DIRECT, true)
+                    ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+            line = buffer.duplicate();
+        }
+
+        // The next line without its terminator, as the buffer between position
+        // and limit; valid until the next call. null at the end of the file.
+        public ByteBuffer nextLine() throws IOException {
+            while (true) {
+                for (int i = scan; i < limit; i++) {
+                    byte b = buffer.get(i);
+                    if (b != '\n' && b != '\r') {
+                        continue;
+                    }
+                    if (b == '\r' && i + 1 == limit && !eof) {
+                        // \r at the end of the buffer: is it \r\n?
+                        scan = i;
+                        fill();
+                        i = scan - 1;
+                        continue;
+                    }
+                    int next = i + 1;
+                    if (b == '\r' && next < limit && buffer.get(next) == '\n') {
+                        next++;
+                    }
+                    return take(i, next);
+                }
+                if (eof) {
+                    return pos < limit ? take(limit, limit) : null;
+                }
+                scan = limit;
+                fill();
+            }
+        }
+
+        // Copies the next line into text; false at the end of the file
+        public boolean next(Text text) throws IOException {
+            ByteBuffer view = nextLine();
+            if (view == null) {
+                return false;
+            }
+            if (view.hasArray()) {
+                text.set(view.array(), view.arrayOffset() + view.position(), view.remaining());
+            } else {
+                text.set(copy(view), 0, view.remaining());
+            }
+            return true;
+        }
+
+        // The next line decoded from UTF-8, or null at the end of the file
+        public String readLine() throws IOException {
+            ByteBuffer view = nextLine();
+            if (view == null) {
+                return null;
+            }
+            if (view.hasArray()) {
+                return new String(view.array(), view.arrayOffset() + view.position(), view.remaining(),
+                        StandardCharsets.UTF_8);
+            }
+            return new String(copy(view), 0, view.remaining(), StandardCharsets.UTF_8);
+        }
+
+        public long getLines() {
+            return lines;
+        }
+
+        public void close() throws IOException {
+            stop();
+            in.close();
+        }
+
+        private ByteBuffer take(int end, int next) {
+            line.limit(end);
+            line.position(pos);
+            pos = next;
+            scan = next;
+            lines++;
+            return line;
+        }
+
+        private byte[] copy(ByteBuffer view) {
+            if (scratch.length < view.remaining()) {
+                scratch = new byte[Math.max(view.remaining(), scratch.length * 2)];
+            }
+            view.duplicate().get(scratch, 0, view.remaining());
+            return scratch;
+        }
+
+        // Moves the unread bytes to the front (growing the buffer if one line
+        // fills all of it) and reads more behind them
+        private void fill() throws IOException {
+            if (pos == 0 && limit == buffer.capacity()) {
+                ByteBuffer bigger = buffer.isDirect()
+                        ? ByteBuffer.allocateDirect(buffer.capacity() * 2) : ByteBuffer.allocate(buffer.capacity() * 2);
+                buffer.clear();
+                bigger.put(buffer);
+                buffer = bigger;
+                line = buffer.duplicate();
+            } else if (pos > 0) {
+                buffer.limit(limit).position(pos);
+                buffer.compact();
+                limit -= pos;
+                scan -= pos;
+                pos = 0;
+            }
+            buffer.limit(buffer.capacity()).position(limit);
+            int n = read();
+            if (n < 0) {
+                eof = true;
+            } else {
+                limit += n;
+                bytes += n;
+            }
+        }
+
+        private int read() throws IOException {
+            if (byteBufferReads) {
+                try {
+                    return in.read(buffer);
+                } catch (UnsupportedOperationException e) {
+                    // wrapped streams do not always report the capability correctly
+                    byteBufferReads = false;
+                }
+            }
+            if (buffer.isDirect()) {
+                ByteBuffer heap = ByteBuffer.allocate(buffer.capacity());
+                buffer.flip();
+                heap.put(buffer);
+                buffer = heap;
+                line = buffer.duplicate();
+            }
+            return in.read(buffer.array(), buffer.arrayOffset() + limit, buffer.capacity() - limit);
+        }
+    }
+
+    public static class Writer extends Throughput {
+        private final FSDataOutputStream out;
+        private final byte[] array;
+        private final ByteBuffer buffer;
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final SyncPolicy policy;
+        private final long syncBytes;
+        private long unsynced;
+
+        public Writer(Configuration conf, Path path, boolean overwrite) throws IOException {
+            this(conf, path.getFileSystem(conf).create(path, overwrite, conf.getInt(BUFFER_KB, 1024) << 10),
+                    path.toString());
+        }
+
+        // e.g. for FileSystem.append
+        public Writer(Configuration conf, FSDataOutputStream out, String name) {
+            super(name);
+            this.out = out;
+            array = new byte[conf.getInt(BUFFER_KB, 1024) << 10];
+            buffer = ByteBuffer.wrap(array);
+            policy = SyncPolicy.valueOf(conf.getTrimmed(SYNC, "none").toUpperCase());
+            syncBytes = conf.getLong(SYNC_MB, 0) << 20;
+        }
+
+        public void write(byte[] bytes, int start, int len) throws IOException {
+            if (len > buffer.remaining()) {
+                drain();
+            }
+            if (len >= array.length) {
+                out.write(bytes, start, len);
+                written(len);
+            } else {
+                buffer.put(bytes, start, len);
+            }
+        }
+
+        public void write(CharSequence chars) throws IOException {
+            CharBuffer in = CharBuffer.wrap(chars);
+            encoder.reset();
+            while (encoder.encode(in, buffer, true).isOverflow()) {
+                drain();
+            }
+            while (encoder.flush(buffer).isOverflow()) {
+                drain();
+            }
+        }
+
+        public void writeLine(CharSequence chars) throws IOException {
+            write(chars);
+            newLine();
+        }
+
+        public void writeLine(Text text) throws IOException {
+            write(text.getBytes(), 0, text.getLength());
+            newLine();
+        }
+
+        // Pushes everything written so far to the stream and applies the sync policy
+        public void sync() throws IOException {
+            drain();
+            if (policy == SyncPolicy.HSYNC) {
+                out.hsync();
+            } else if (policy == SyncPolicy.HFLUSH) {
+                out.hflush();
+            }
+            unsynced = 0;
+        }
+
+        public void close() throws IOException {
+            try {
+                if (policy == SyncPolicy.NONE) {
+                    drain();
+                } else {
+                    sync();
+                }
+            } finally {
+                out.close();
+                stop();
+            }
+        }
+
+        private void newLine() throws IOException {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            buffer.put((byte) '\n');
+        }
+
+        private void drain() throws IOException {
+            if (buffer.position() > 0) {
+                int n = buffer.position();
+                out.write(array, 0, n);
+                buffer.clear();
+                written(n);
+            }
+        }
+
+        private void written(long n) throws IOException {
+            bytes += n;
+            unsynced += n;
+            if (syncBytes > 0 && unsynced >= syncBytes && policy != SyncPolicy.NONE) {
+                sync();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Configuration conf = new Configuration();
+        String[] rest = new GenericOptionsParser(conf, args).getRemainingArgs();
+        String command = rest.length > 0 ? rest[0] : "";
+
+        if (command.equals("read") && rest.length == 2) {
+            Reader reader = new Reader(conf, new Path(rest[1]));
+            try {
+                while (reader.nextLine() != null) {
+                }
+            } finally {
+                reader.close();
+            }
+            System.out.println(reader + ", " + reader.getLines() + " lines");
+        } else if (command.equals("copy") && rest.length == 3) {
+            Reader reader = new Reader(conf, new Path(rest[1]));
+            Writer writer = new Writer(conf, new Path(rest[2]), true);
+            Text line = new Text();
+            try {
+                while (reader.next(line)) {
+                    writer.writeLine(line);
+                }
+            } finally {
+                reader.close();
+                writer.close();
+            }
+            System.out.println(reader + ", " + reader.getLines() + " lines");
+            System.out.println(writer);
+        } else {
+            System.err.println("Usage: HdfsStreams [-D streams.buffer.kb=K] read <file>");
+            System.err.println("       HdfsStreams [-D streams.sync=none|hflush|hsync] [-D streams.sync.mb=M]"
+                    + " copy <file> <target file>");
+            System.exit(2);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+// HyperLogLog distinct counter over 64-bit item hashes: 2^precision one-byte
+// registers, relative standard error about 1.04 / sqrt(2^precision)
+// (0.8% at the default precision 14, 16 KB). Small cardinalities use linear
+// counting. Counters of the same precision merge by taking register maxima.
+public class HyperLogLog implements Writable {
+
+    private int precision;
+    private byte[] registers = new byte[0];
+
+    public HyperLogLog() {
+    }
+
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 18) {
+            throw new IllegalArgumentException("HyperLogLog precision must be in [4, 18]: " + precision);
+        }
+        this.precision = precision;
+        registers = new byte[1 << precision];
+    }
+
+    public void add(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // leading zeros of the remaining bits, +1; the sentinel bit caps the rank
+        long rest = (hash << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte r : registers) {
+            sum += 1.0 / (1L << r);
+            if (r == 0) zeros++;
+        }
+        double alpha = 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    public double relativeError() {
+        return 1.04 / Math.sqrt(registers.length);
+    }
+
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Cannot merge precision " + other.precision
+                    + " into precision " + precision);
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    public void write(DataOutput out) throws IOException {
+        WritableUtils.writeVInt(out, precision);
+        out.write(registers);
+    }
+
+    public void readFields(DataInput in) throws IOException {
+        precision = WritableUtils.readVInt(in);
+        if (registers.length != 1 << precision) {
+            registers = new byte[1 << precision];
+        }
+        in.readFully(registers);
+    }
+}
@@ -0,0 +1,298 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+// Incremental KMeans for an input directory that keeps receiving new files
+// (one per day, say). Only files that were never seen before are read.
+//
+// The model is kept in generations <model>/gen-N, each holding
+//   centroids  the current centroids (CentroidFile format)
+//   stats      "id<TAB>weight<TAB>sum<TAB>sum of squares" per cluster
+//   consumed   the input files already merged into the model, one per line
+// A run assigns the points of the new files to the current centroids in one
+// MapReduce pass, scales the stored statistics by kmeans.incremental.decay
+// (default 1, i.e. no forgetting), adds the new statistics and recomputes
+// every centroid as sum / weight. The next generation is written to
+// gen-N.tmp and renamed into place, so a failed run leaves the previous
+// generation as it was and its new files are picked up again next time.
+public class IncrementalKMeans {
+
+    public static final String DECAY = "kmeans.incremental.decay";
+    // Generations kept after a successful run, the new one included (default 3, at least 1)
+    public static final String KEEP = "kmeans.incremental.keep";
+
+    public enum Counters { POINTS, SKIPPED_LINES }
+
+    // Per-task statistics of the new points against the current centroids
+    public static class StatsMapper extends Mapper<Object, Text, IntWritable, ClusterStatsWritable> {
+        private CentroidIndex index;
+        private ClusterStatsWritable[] partials;
+        private PointParser parser;
+
+        @Override
+        protected void setup(Context context) throws IOException, InterruptedException {
+            Configuration conf = context.getConfiguration();
+            index = CentroidIndex.create(conf, KMeans.loadCentroids(conf, context.getCacheFiles()));
+            partials = new ClusterStatsWritable[index.size()];
+            for (int i = 0; i < partials.length; i++) {
+                partials[i] = new ClusterStatsWritable(index.dimensions());
+            }
+            parser = new PointParser(conf);
+        }
+
+        public void map(Object key, Text value, Context context)
+                throws IOException, InterruptedException {
+            double[] point = parser.parse(value.toString());
+            if (point == null) {
+                context.getCounter(Counters.SKIPPED_LINES).increment(1);
+                return;
+            }
+            partials[index.nearest(point)].add(point);
+            context.getCounter(Counters.POINTS).increment(1);
+        }
+
+        @Override
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            for (int i = 0; i < partials.length; i++) {
+                if (partials[i].getWeight() > 0) {
+                    context.write(new IntWritable(i), partials[i]);
+                }
+            }
+        }
+    }
+
+    // Combiner and reducer
+    public static class StatsReducer
+            extends Reducer<IntWritable, ClusterStatsWritable, IntWritable, ClusterStatsWritable> {
+        public void reduce(IntWritable key, Iterable<ClusterStatsWritable> values, Context context)
+                throws IOException, InterruptedException {
+            ClusterStatsWritable total = new ClusterStatsWritable();
+            for (ClusterStatsWritable val : values) {
+                total.merge(val);
+            }
+            context.write(key, total);
+        }
+    }
+
+    public static boolean run(Configuration conf, Path input, Path model, Path seedFile) throws Exception {
+        FileSystem fs = model.getFileSystem(conf);
+        int latest = latestGeneration(fs, model);
+        int generation = latest + 1;
+        Path tmp = new Path(model, "gen-" + generation + ".tmp");
+        fs.delete(tmp, true); // left over from a failed run
+
+        double[][] centroids;
+        ClusterStatsWritable[] stats;
+        Set<String> consumed = new LinkedHashSet<String>();
+        Path centroidFile;
+        if (latest > 0) {
+            Path current = new Path(model, "gen-" + latest);
+            centroidFile = new Path(current, "centroids");
+            centroids = CentroidFile.read(fs, centroidFile);
+            stats = readStats(fs, new Path(current, "stats"), centroids);
+            consumed.addAll(readLines(fs, new Path(current, "consumed")));
+        } else {
+            // First run: seed file, else k-means|| when kmeans.k is set, else the defaults
+            centroidFile = new Path(tmp, "seeds");
+            if (seedFile != null) {
+                centroids = CentroidFile.read(seedFile.getFileSystem(conf), seedFile);
+            } else if (conf.get(KMeansParallelInit.K) != null) {
+                centroids = KMeansParallelInit.run(conf, input, new Path(tmp, "seeds-init"));
+            } else {
+                centroids = KMeans.DEFAULT_CENTROIDS;
+            }
+            CentroidFile.write(fs, centroidFile, centroids);
+            stats = new ClusterStatsWritable[centroids.length];
+            for (int i = 0; i < stats.length; i++) {
+                stats[i] = new ClusterStatsWritable(centroids[i].length);
+            }
+        }
+
+        List<Path> fresh = new ArrayList<Path>();
+        for (FileStatus file : inputFiles(fs, input)) {
+            if (!consumed.contains(file.getPath().toString())) {
+                fresh.add(file.getPath());
+            }
+        }
+        if (fresh.isEmpty()) {
+            System.out.println("No new input files in " + input);
+            fs.delete(tmp, true);
+            return true;
+        }
+        System.out.println("Merging " + fresh.size() + " new input file(s) into generation " + generation);
+
+        Path batch = new Path(tmp, "batch");
+        Job job = Job.getInstance(conf, "incremental kmeans gen-" + generation);
+        job.setJarByClass(IncrementalKMeans.class);
+        job.setMapperClass(StatsMapper.class);
+        job.setCombinerClass(StatsReducer.class);
+        job.setReducerClass(StatsReducer.class);
+        job.setOutputKeyClass(IntWritable.class);
+        job.setOutputValueClass(ClusterStatsWritable.class);
+        job.addCacheFile(fs.makeQualified(centroidFile).toUri().resolve("#" + KMeans.CENTROIDS_LINK));
+        FileInputFormat.setInputPaths(job, fresh.toArray(new Path[fresh.size()]));
+        FileOutputFormat.setOutputPath(job, batch);
+        if (!job.waitForCompletion(true)) {
+            return false;
+        }
+
+        // Decay the old statistics, merge the batch, recompute the centroids
+        double decay = conf.getDouble(DECAY, 1.0);
+        for (ClusterStatsWritable s : stats) {
+            s.scale(decay);
+        }
+        for (FileStatus part : fs.listStatus(batch)) {
+            if (part.getPath().getName().startsWith("part-")) {
+                for (String line : readLines(fs, part.getPath())) {
+                    int tab = line.indexOf('\t');
+                    stats[Integer.parseInt(line.substring(0, tab))].merge(
+                            ClusterStatsWritable.parse(line.substring(tab + 1)));
+                }
+            }
+        }
+        double[][] next = new double[centroids.length][];
+        for (int i = 0; i < next.length; i++) {
+            // a cluster that never got a point keeps its seed
+            next[i] = stats[i].getWeight() > 0 ? stats[i].centroid() : centroids[i].clone();
+        }
+
+        for (Path file : fresh) {
+            consumed.add(file.toString());
+        }
+        CentroidFile.write(fs, new Path(tmp, "centroids"), next);
+        writeStats(fs, new Path(tmp, "stats"), stats);
+        writeLines(fs, new Path(tmp, "consumed"), consumed);
+
+        Path published = new Path(model, "gen-" + generation);
+        if (!fs.rename(tmp, published)) {
+            throw new IOException("Could not rename " + tmp + " to " + published);
+        }
+        prune(fs, model, generation - Math.max(1, conf.getInt(KEEP, 3)) + 1);
+
+        System.out.println("Generation " + generation + ": max centroid shift = "
+                + CentroidFile.maxShift(centroids, next));
+        for (int i = 0; i < next.length; i++) {
+            System.out.printf("  cluster %d: weight %.1f, rms radius %.4f, centroid %s%n", i,
+                    stats[i].getWeight(), Math.sqrt(stats[i].variance()), CentroidFile.format(next[i]));
+        }
+        return true;
+    }
+
+    // Highest N of the complete gen-N directories, 0 if there are none
+    static int latestGeneration(FileSystem fs, Path model) throws IOException {
+        int latest = 0;
+        if (!fs.exists(model)) {
+            return latest;
+        }
+        for (FileStatus status : fs.listStatus(model)) {
+            String name = status.getPath().getName();
+            if (status.isDirectory() && name.matches("gen-\\d+")) {
+                latest = Math.max(latest, Integer.parseInt(name.substring(4)));
+            }
+        }
+        return latest;
+    }
+
+    // Deletes the generations older than oldestKept
+    private static void prune(FileSystem fs, Path model, int oldestKept) throws IOException {
+        for (FileStatus status : fs.listStatus(model)) {
+            String name = status.getPath().getName();
+            if (status.isDirectory() && name.matches("gen-\\d+")
+                    && Integer.parseInt(name.substring(4)) < oldestKept) {
+                fs.delete(status.getPath(), true);
+            }
+        }
+    }
+
+    // Plain files directly under input, skipping _ and . names like FileInputFormat
+    private static List<FileStatus> inputFiles(FileSystem fs, Path input) throws IOException {
+        List<FileStatus> files = new ArrayList<FileStatus>();
+        for (FileStatus status : fs.listStatus(input)) {
+            String name = status.getPath().getName();
+            if (status.isFile() && !name.startsWith("_") && !name.startsWith(".")) {
+                files.add(status);
+            }
+        }
+        return files;
+    }
+
+    private static ClusterStatsWritable[] readStats(FileSystem fs, Path path, double[][] centroids)
+            throws IOException {
+        ClusterStatsWritable[] stats = new ClusterStatsWritable[centroids.length];
+        for (int i = 0; i < stats.length; i++) {
+            stats[i] = new ClusterStatsWritable(centroids[i].length);
+        }
+        for (String line : readLines(fs, path)) {
+            int tab = line.indexOf('\t');
+            stats[Integer.parseInt(line.substring(0, tab))] = ClusterStatsWritable.parse(line.substring(tab + 1));
+        }
+        return stats;
+    }
+
+    private static void writeStats(FileSystem fs, Path path, ClusterStatsWritable[] stats) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        for (int i = 0; i < stats.length; i++) {
+            lines.add(i + "\t" + stats[i]);
+        }
+        writeLines(fs, path, lines);
+    }
+
+    private static List<String> readLines(FileSystem fs, Path path) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(fs.open(path), StandardCharsets.UTF_8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    lines.add(line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+
+    private static void writeLines(FileSystem fs, Path path, Iterable<String> lines) throws IOException {
+        Writer writer = new OutputStreamWriter(fs.create(path, true), StandardCharsets.UTF_8);
+        try {
+            for (String line : lines) {
+                writer.write(line + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Configuration conf = new Configuration();
+        String[] rest = new GenericOptionsParser(conf, args).getRemainingArgs();
+        if (rest.length < 2) {
+            System.err.println("Usage: IncrementalKMeans [-D kmeans.incremental.decay=D] [-D kmeans.k=K]"
+                    + " <input dir> <model dir> [initial centroid file]");
+            System.exit(2);
+        }
+        Path seeds = rest.length > 2 ? new Path(rest[2]) : null;
+        System.exit(run(conf, new Path(rest[0]), new Path(rest[1]), seeds) ? 0 : 1);
+    }
+}
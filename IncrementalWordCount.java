@@ -0,0 +1,397 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.FileContext;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Options;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.input.KeyValueTextInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.mapreduce.lib.join.CompositeInputFormat;
+import org.apache.hadoop.mapreduce.lib.join.CompositeInputSplit;
+import org.apache.hadoop.mapreduce.lib.join.TupleWritable;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.LazyOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+// WordCount that only counts what is new since the last run.
+//
+// State directory layout:
+//   v-N/part-r-*     full counts, as WordCount writes them (sorted, hash partitioned)
+//   v-N/_consumed    "length<TAB>modification time<TAB>path" of every input file,
+//                    as far as it has been counted
+//   CURRENT          name of the current version, replaced atomically
+//
+// A run counts what is new in the input: whole files that were never seen
+// and, for files that were appended to, only the bytes after the consumed
+// length (TailInputFormat). Each file is counted up to the length it had when
+// the run listed it. Input files may only be added or appended to: a file that
+// got shorter, or was rewritten at the same length, fails the run instead of
+// being counted twice. The delta is counted with the plain WordCount job,
+// using as many reducers as the current version has parts.
+// Both outputs are then partitioned and sorted the same way, so a map-only
+// outer merge join (CompositeInputFormat, one split per part file) adds
+// the delta to the old counts partition by partition without a shuffle.
+// The result becomes v-N+1 and CURRENT is switched to it with one
+// overwriting rename.
+public class IncrementalWordCount {
+
+    public static final String CURRENT = "CURRENT";
+    public static final String CONSUMED = "_consumed";
+    // Versions kept after a successful run, the new one included (default 2, at least 1)
+    public static final String KEEP = "wordcount.incremental.keep";
+
+    // "from<TAB>to<TAB>path" list of the byte ranges a run counts
+    static final String TAILS = "wordcount.incremental.tails";
+
+    // Named output prefix of the merge job: "p<partition>"
+    private static final String PARTITION_OUTPUT = "p";
+
+    // KeyValueTextInputFormat with exactly one split per file, in file name
+    // order, so part-r-00003 of both sides end up in the same join split
+    public static class PartInputFormat extends KeyValueTextInputFormat {
+        @Override
+        protected boolean isSplitable(JobContext context, Path file) {
+            return false;
+        }
+
+        @Override
+        protected List<FileStatus> listStatus(JobContext job) throws IOException {
+            List<FileStatus> files = new ArrayList<FileStatus>(super.listStatus(job));
+            Collections.sort(files);
+            return files;
+        }
+    }
+
+    // Splits covering [from, to) of each file in the TAILS list. A split that
+    // starts inside a file starts one byte early, on the last byte already
+    // counted: LineRecordReader skips the rest of that line, which was counted
+    // before. The last split ends one byte before to, so a line starting at
+    // to, appended after the file was listed, is left for the next run.
+    public static class TailInputFormat extends TextInputFormat {
+        @Override
+        public List<InputSplit> getSplits(JobContext job) throws IOException {
+            Configuration conf = job.getConfiguration();
+            Path list = new Path(conf.get(TAILS));
+            long minSize = Math.max(getFormatMinSplitSize(), getMinSplitSize(job));
+            long maxSize = getMaxSplitSize(job);
+
+            List<InputSplit> splits = new ArrayList<InputSplit>();
+            for (String line : readLines(list.getFileSystem(conf), list)) {
+                String[] fields = line.split("\t", 3);
+                long from = Long.parseLong(fields[0]);
+                long to = Long.parseLong(fields[1]);
+                Path path = new Path(fields[2]);
+                FileSystem fs = path.getFileSystem(conf);
+                FileStatus file = fs.getFileStatus(path);
+                BlockLocation[] blocks = fs.getFileBlockLocations(file, 0, file.getLen());
+
+                if (!isSplitable(job, path)) {
+                    // compressed: only ever counted whole, from 0
+                    splits.add(makeSplit(path, 0, to, blocks.length > 0 ? blocks[0].getHosts() : new String[0]));
+                    continue;
+                }
+                long splitSize = computeSplitSize(file.getBlockSize(), minSize, maxSize);
+                long start = from == 0 ? 0 : from - 1;
+                long end = to - 1;
+                do {
+                    long length = end - start > splitSize * 1.1 ? splitSize : end - start;
+                    String[] hosts = blocks.length > 0 ? blocks[getBlockIndex(blocks, start)].getHosts() : new String[0];
+                    splits.add(makeSplit(path, start, length, hosts));
+                    start += length;
+                } while (start < end);
+            }
+            return splits;
+        }
+    }
+
+    // Old count + delta count for every word present on either side. Output
+    // goes to the partition of the input, not of the map task, which is why
+    // it is written under the partition number and renamed afterwards.
+    public static class MergeMapper extends Mapper<Text, TupleWritable, Text, LongWritable> {
+        private MultipleOutputs<Text, LongWritable> outputs;
+        private String partition;
+        private final LongWritable count = new LongWritable();
+
+        @Override
+        protected void setup(Context context) throws IOException, InterruptedException {
+            outputs = new MultipleOutputs<Text, LongWritable>(context);
+            CompositeInputSplit split = (CompositeInputSplit) context.getInputSplit();
+            String name = ((FileSplit) split.get(0)).getPath().getName();
+            partition = name.substring(name.lastIndexOf('-') + 1);
+        }
+
+        public void map(Text word, TupleWritable counts, Context context)
+                throws IOException, InterruptedException {
+            long sum = 0;
+            for (int i = 0; i < counts.size(); i++) {
+                if (counts.has(i)) {
+                    sum += Long.parseLong(counts.get(i).toString());
+                }
+            }
+            count.set(sum);
+            outputs.write(word, count, PARTITION_OUTPUT + partition);
+        }
+
+        @Override
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            outputs.close();
+        }
+    }
+
+    public static boolean run(Configuration conf, Path input, Path state) throws Exception {
+        FileSystem fs = state.getFileSystem(conf);
+        Path current = currentVersion(fs, state);
+        // path -> "length<TAB>modification time"
+        Map<String, String> consumed = current == null
+                ? new TreeMap<String, String>() : readConsumed(fs, new Path(current, CONSUMED));
+
+        CompressionCodecFactory codecs = new CompressionCodecFactory(conf);
+        List<Path> fresh = new ArrayList<Path>();
+        List<String> tails = new ArrayList<String>();
+        List<String> changed = new ArrayList<String>();
+        long bytes = 0;
+        RemoteIterator<LocatedFileStatus> files = fs.listFiles(input, true);
+        while (files.hasNext()) {
+            LocatedFileStatus file = files.next();
+            String name = file.getPath().getName();
+            if (name.startsWith("_") || name.startsWith(".")) {
+                continue;
+            }
+            String path = file.getPath().toString();
+            long from = 0;
+            String seen = consumed.get(path);
+            if (seen != null) {
+                from = Long.parseLong(seen.substring(0, seen.indexOf('\t')));
+                long modified = Long.parseLong(seen.substring(seen.indexOf('\t') + 1));
+                boolean appended = file.getLen() > from && codecs.getCodec(file.getPath()) == null;
+                boolean unchanged = file.getLen() == from && file.getModificationTime() == modified;
+                if (!appended && !unchanged) {
+                    changed.add(path);
+                    continue;
+                }
+            }
+            if (file.getLen() > from) {
+                fresh.add(file.getPath());
+                tails.add(from + "\t" + file.getLen() + "\t" + path);
+                bytes += file.getLen() - from;
+            }
+            consumed.put(path, file.getLen() + "\t" + file.getModificationTime());
+        }
+        if (!changed.isEmpty()) {
+            // counting them again would count their old lines twice
+            throw new IOException("Input files were changed after they were counted, other than by"
+                    + " appending: " + changed + ". Restore or remove them, or start a new state directory");
+        }
+        if (fresh.isEmpty()) {
+            System.out.println("No new input since " + current);
+            return true;
+        }
+
+        int version = current == null ? 1 : Integer.parseInt(current.getName().substring(2)) + 1;
+        Path next = new Path(state, "v-" + version);
+        fs.delete(next, true); // left over from a failed run
+        Path tailList = new Path(state, "_tails-" + version);
+        writeLines(fs, tailList, tails);
+        System.out.println("Counting " + bytes + " new bytes in " + fresh.size() + " file(s) into " + next);
+
+        if (current == null) {
+            // First run: the full count is the delta
+            Job job = countJob(conf, next, fresh, tailList);
+            if (!job.waitForCompletion(true)) {
+                return false;
+            }
+        } else {
+            int partitions = parts(fs, current).size();
+            Path delta = new Path(state, "delta-" + version);
+            fs.delete(delta, true);
+            Job count = countJob(conf, delta, fresh, tailList);
+            count.setNumReduceTasks(partitions);
+            if (!count.waitForCompletion(true) || !merge(conf, current, delta, next, partitions)) {
+                return false;
+            }
+            fs.delete(delta, true);
+        }
+        fs.delete(tailList, false);
+
+        List<String> manifest = new ArrayList<String>();
+        for (Map.Entry<String, String> e : consumed.entrySet()) {
+            manifest.add(e.getValue() + "\t" + e.getKey());
+        }
+        writeLines(fs, new Path(next, CONSUMED), manifest);
+        publish(conf, state, next);
+        prune(fs, state, version - Math.max(1, conf.getInt(KEEP, 2)) + 1);
+        System.out.println("Current version: " + next);
+        return true;
+    }
+
+    // The WordCount job, reading only the ranges in tailList
+    private static Job countJob(Configuration conf, Path output, List<Path> files, Path tailList)
+            throws IOException {
+        Job job = WordCount.createJob(conf, output, files.toArray(new Path[files.size()]));
+        job.setInputFormatClass(TailInputFormat.class);
+        job.getConfiguration().set(TAILS, tailList.toString());
+        return job;
+    }
+
+    private static boolean merge(Configuration conf, Path current, Path delta, Path next, int partitions)
+            throws Exception {
+        Job job = Job.getInstance(conf, "WordCount merge " + next.getName());
+        job.setJarByClass(IncrementalWordCount.class);
+        job.setInputFormatClass(CompositeInputFormat.class);
+        job.getConfiguration().set(CompositeInputFormat.JOIN_EXPR,
+                CompositeInputFormat.compose("outer", PartInputFormat.class, current, delta));
+        job.setMapperClass(MergeMapper.class);
+        job.setNumReduceTasks(0);
+        job.setOutputKeyClass(Text.class);
+        job.setOutputValueClass(LongWritable.class);
+        LazyOutputFormat.setOutputFormatClass(job, TextOutputFormat.class);
+        FileOutputFormat.setOutputPath(job, next);
+        if (!job.waitForCompletion(true)) {
+            return false;
+        }
+
+        // p00003-m-00001 -> part-r-00003
+        FileSystem fs = next.getFileSystem(conf);
+        for (FileStatus status : fs.listStatus(next)) {
+            String name = status.getPath().getName();
+            if (name.startsWith(PARTITION_OUTPUT) && name.contains("-m-")) {
+                String partition = name.substring(PARTITION_OUTPUT.length(), name.indexOf("-m-"));
+                Path part = new Path(next, "part-r-" + partition);
+                if (!fs.rename(status.getPath(), part)) {
+                    throw new IOException("Could not rename " + status.getPath() + " to " + part);
+                }
+            }
+        }
+        // Partitions without any word get an empty file, like a reducer would write
+        for (int i = 0; i < partitions; i++) {
+            Path part = new Path(next, String.format("part-r-%05d", i));
+            if (!fs.exists(part)) {
+                fs.create(part, false).close();
+            }
+        }
+        return true;
+    }
+
+    // Points CURRENT at version with a rename over the old pointer
+    private static void publish(Configuration conf, Path state, Path version) throws IOException {
+        FileSystem fs = state.getFileSystem(conf);
+        Path tmp = new Path(state, "." + CURRENT + ".tmp");
+        writeString(fs, tmp, version.getName());
+        FileContext.getFileContext(state.toUri(), conf)
+                .rename(tmp, new Path(state, CURRENT), Options.Rename.OVERWRITE);
+    }
+
+    static Path currentVersion(FileSystem fs, Path state) throws IOException {
+        Path pointer = new Path(state, CURRENT);
+        return fs.exists(pointer) ? new Path(state, readString(fs, pointer)) : null;
+    }
+
+    private static List<Path> parts(FileSystem fs, Path version) throws IOException {
+        List<Path> parts = new ArrayList<Path>();
+        for (FileStatus status : fs.listStatus(version)) {
+            if (status.getPath().getName().startsWith("part-")) {
+                parts.add(status.getPath());
+            }
+        }
+        return parts;
+    }
+
+    // Deletes the versions older than oldestKept
+    private static void prune(FileSystem fs, Path state, int oldestKept) throws IOException {
+        for (FileStatus status : fs.listStatus(state)) {
+            String name = status.getPath().getName();
+            if (status.isDirectory() && name.matches("v-\\d+") && Integer.parseInt(name.substring(2)) < oldestKept) {
+                fs.delete(status.getPath(), true);
+            }
+        }
+    }
+
+    private static Map<String, String> readConsumed(FileSystem fs, Path manifest) throws IOException {
+        Map<String, String> consumed = new TreeMap<String, String>();
+        for (String line : readLines(fs, manifest)) {
+            String[] fields = line.split("\t", 3);
+            consumed.put(fields[2], fields[0] + "\t" + fields[1]);
+        }
+        return consumed;
+    }
+
+    private static List<String> readLines(FileSystem fs, Path path) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(fs.open(path), StandardCharsets.UTF_8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    lines.add(line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+
+    private static void writeLines(FileSystem fs, Path path, Iterable<String> lines) throws IOException {
+        Writer writer = new OutputStreamWriter(fs.create(path, true), StandardCharsets.UTF_8);
+        try {
+            for (String line : lines) {
+                writer.write(line + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static String readString(FileSystem fs, Path path) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(fs.open(path), StandardCharsets.UTF_8));
+        try {
+            return reader.readLine().trim();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void writeString(FileSystem fs, Path path, String value) throws IOException {
+        Writer writer = new OutputStreamWriter(fs.create(path, true), StandardCharsets.UTF_8);
+        try {
+            writer.write(value + "\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Configuration conf = new Configuration();
+        String[] rest = new GenericOptionsParser(conf, args).getRemainingArgs();
+        if (rest.length < 2) {
+            System.err.println("Usage: IncrementalWordCount [-D mapreduce.job.reduces=N] <input> <state dir>");
+            System.exit(2);
+        }
+        System.exit(run(conf, new Path(rest[0]), new Path(rest[1])) ? 0 : 1);
+    }
+}
@@ -0,0 +1,334 @@
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.RunningJob;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.TaskCounter;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+import org.apache.hadoop.mapreduce.counters.AbstractCounters;
+import org.apache.hadoop.mapreduce.counters.CounterGroupBase;
+
+// Instrumentation shared by the jobs: common counters, sampled timings of
+// the map / reduce hot paths, and the JSON run report the drivers write when
+// a job or a KMeans iteration ends.
+//
+// Timings travel as counters too, one group per phase ("Timing map", ...)
+// holding a log-scale histogram of the sampled durations: bucket le_N counts
+// the samples of at most N ns, gt_N the ones above the last bound. Only one
+// call in metrics.timing.sample (default 1000, 0 disables) reads the clock,
+// and counters are only touched when the task ends.
+//
+// The report (<job output>/_metrics.json unless metrics.report=false) holds
+// the job's wall time, every counter, the timing histograms, a few derived
+// ratios and whatever the driver adds, e.g. the centroid shift.
+public class JobMetrics {
+
+    public static final String REPORT = "metrics.report";
+    public static final String TIMING_SAMPLE = "metrics.timing.sample";
+
+    public static final String REPORT_FILE = "_metrics.json";
+
+    public enum Counters {
+        // records the mappers took in and the reducers wrote out
+        RECORDS_IN, RECORDS_OUT,
+        // input lines that could not be parsed and were skipped
+        MALFORMED_RECORDS,
+        // point-to-centroid distances evaluated by the KMeans mappers
+        DISTANCE_COMPUTATIONS
+    }
+
+    static final String TIMING_GROUP = "Timing ";
+    static final String SAMPLES = "samples";
+    static final String SAMPLED_NANOS = "sampled_nanos";
+
+    // Histogram bucket upper bounds: 256 ns, 1 us, 4 us, ... about 1 s
+    private static final long[] BOUNDS = new long[12];
+
+    static {
+        for (int i = 0; i < BOUNDS.length; i++) {
+            BOUNDS[i] = 256L << (2 * i);
+        }
+    }
+
+    // Sampled durations of one phase within one task
+    public static class Timer {
+        private final String phase;
+        private final int every;
+        // the first call is always sampled, so rare phases still show up
+        private int countdown = 1;
+        private final long[] buckets = new long[BOUNDS.length + 1];
+        private long samples;
+        private long nanos;
+
+        public Timer(Configuration conf, String phase) {
+            this.phase = phase;
+            every = conf.getInt(TIMING_SAMPLE, 1000);
+        }
+
+        // Start of a timed section: the clock for a sampled call, else 0
+        public long start() {
+            if (every <= 0 || --countdown > 0) {
+                return 0;
+            }
+            countdown = every;
+            return System.nanoTime();
+        }
+
+        public void stop(long start) {
+            if (start == 0) {
+                return;
+            }
+            long elapsed = System.nanoTime() - start;
+            int b = 0;
+            while (b < BOUNDS.length && elapsed > BOUNDS[b]) {
+                b++;
+            }
+            buckets[b]++;
+            samples++;
+            nanos += elapsed;
+        }
+
+        public void publish(TaskInputOutputContext<?, ?, ?, ?> context) {
+            Map<String, Long> values = drain();
+            for (Map.Entry<String, Long> e : values.entrySet()) {
+                context.getCounter(TIMING_GROUP + phase, e.getKey()).increment(e.getValue());
+            }
+        }
+
+        // Old API tasks
+        public void publish(Reporter reporter) {
+            Map<String, Long> values = drain();
+            for (Map.Entry<String, Long> e : values.entrySet()) {
+                reporter.incrCounter(TIMING_GROUP + phase, e.getKey(), e.getValue());
+            }
+        }
+
+        // In-process runs that collect their own Counters
+        public void publish(org.apache.hadoop.mapreduce.Counters counters) {
+            Map<String, Long> values = drain();
+            for (Map.Entry<String, Long> e : values.entrySet()) {
+                counters.findCounter(TIMING_GROUP + phase, e.getKey()).increment(e.getValue());
+            }
+        }
+
+        // Adds the samples of a timer of the same phase, e.g. another worker's
+        public void merge(Timer other) {
+            for (int b = 0; b < buckets.length; b++) {
+                buckets[b] += other.buckets[b];
+            }
+            samples += other.samples;
+            nanos += other.nanos;
+        }
+
+        // Non-zero counter values, then starts over
+        private Map<String, Long> drain() {
+            Map<String, Long> values = new LinkedHashMap<String, Long>();
+            if (samples == 0) {
+                return values;
+            }
+            values.put(SAMPLES, samples);
+            values.put(SAMPLED_NANOS, nanos);
+            for (int b = 0; b < buckets.length; b++) {
+                if (buckets[b] > 0) {
+                    values.put(bucketName(b), buckets[b]);
+                }
+                buckets[b] = 0;
+            }
+            samples = 0;
+            nanos = 0;
+            return values;
+        }
+    }
+
+    private static String bucketName(int b) {
+        return b < BOUNDS.length ? "le_" + BOUNDS[b] : "gt_" + BOUNDS[BOUNDS.length - 1];
+    }
+
+    // The JSON run report; fields are written in the order they are set
+    public static class Report {
+        private final Map<String, Object> fields = new LinkedHashMap<String, Object>();
+
+        public Report(String name) {
+            fields.put("name", name);
+            fields.put("finished", System.currentTimeMillis());
+        }
+
+        public Report set(String key, Object value) {
+            fields.put(key, value);
+            return this;
+        }
+
+        // All counters, grouped, plus the timing histograms and derived ratios
+        public <C extends Counter, G extends CounterGroupBase<C>> Report counters(AbstractCounters<C, G> counters) {
+            Map<String, Object> groups = new LinkedHashMap<String, Object>();
+            Map<String, Object> timings = new LinkedHashMap<String, Object>();
+            for (G group : counters) {
+                Map<String, Object> values = new LinkedHashMap<String, Object>();
+                for (C counter : group) {
+                    values.put(counter.getName(), counter.getValue());
+                }
+                if (group.getName().startsWith(TIMING_GROUP)) {
+                    timings.put(group.getName().substring(TIMING_GROUP.length()), timing(values));
+                } else {
+                    groups.put(group.getName(), values);
+                }
+            }
+
+            long in = counters.findCounter(Counters.RECORDS_IN).getValue();
+            Map<String, Object> derived = new LinkedHashMap<String, Object>();
+            long combineIn = counters.findCounter(TaskCounter.COMBINE_INPUT_RECORDS).getValue();
+            long combineOut = counters.findCounter(TaskCounter.COMBINE_OUTPUT_RECORDS).getValue();
+            if (combineIn > 0) {
+                derived.put("combine_reduction_ratio", ratio(combineIn, combineOut));
+            }
+            if (in > 0) {
+                // in-mapper aggregation shows up here rather than in the combiner counters
+                long mapOut = counters.findCounter(TaskCounter.MAP_OUTPUT_RECORDS).getValue();
+                if (mapOut > 0) {
+                    derived.put("map_output_per_record", ratio(mapOut, in));
+                }
+                derived.put("malformed_fraction",
+                        ratio(counters.findCounter(Counters.MALFORMED_RECORDS).getValue(), in));
+                long distances = counters.findCounter(Counters.DISTANCE_COMPUTATIONS).getValue();
+                if (distances > 0) {
+                    derived.put("distances_per_record", ratio(distances, in));
+                }
+            }
+            fields.put("derived", derived);
+            fields.put("timings", timings);
+            fields.put("counters", groups);
+            return this;
+        }
+
+        // Writes the report unless metrics.report=false
+        public void write(Configuration conf, Path file) throws IOException {
+            if (!conf.getBoolean(REPORT, true)) {
+                return;
+            }
+            FileSystem fs = file.getFileSystem(conf);
+            Writer writer = new OutputStreamWriter(fs.create(file, true), StandardCharsets.UTF_8);
+            try {
+                StringBuilder json = new StringBuilder();
+                append(json, fields, "");
+                writer.write(json.append('\n').toString());
+            } finally {
+                writer.close();
+            }
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder json = new StringBuilder();
+            append(json, fields, "");
+            return json.toString();
+        }
+    }
+
+    // A report filled in with what every finished job has
+    public static Report report(Job job, long wallMillis) throws IOException, InterruptedException {
+        return new Report(job.getJobName())
+                .set("job_id", job.getJobID().toString())
+                .set("successful", job.isSuccessful())
+                .set("wall_millis", wallMillis)
+                .counters(job.getCounters());
+    }
+
+    public static Report report(RunningJob job, long wallMillis) throws IOException {
+        return new Report(job.getJobName())
+                .set("job_id", job.getID().toString())
+                .set("successful", job.isSuccessful())
+                .set("wall_millis", wallMillis)
+                .counters(job.getCounters());
+    }
+
+    private static Map<String, Object> timing(Map<String, Object> values) {
+        Map<String, Object> timing = new LinkedHashMap<String, Object>();
+        Map<String, Object> histogram = new LinkedHashMap<String, Object>();
+        long samples = 0;
+        long nanos = 0;
+        for (Map.Entry<String, Object> e : values.entrySet()) {
+            long value = (Long) e.getValue();
+            if (e.getKey().equals(SAMPLES)) {
+                samples = value;
+            } else if (e.getKey().equals(SAMPLED_NANOS)) {
+                nanos = value;
+            } else {
+                histogram.put(e.getKey(), value);
+            }
+        }
+        timing.put(SAMPLES, samples);
+        timing.put("mean_nanos", samples > 0 ? nanos / samples : 0);
+        // counter groups list their counters by name: put the buckets in bound order
+        Map<String, Object> ordered = new LinkedHashMap<String, Object>();
+        for (int b = 0; b <= BOUNDS.length; b++) {
+            Object count = histogram.get(bucketName(b));
+            if (count != null) {
+                ordered.put(bucketName(b), count);
+            }
+        }
+        timing.put("histogram", ordered);
+        return timing;
+    }
+
+    private static double ratio(long a, long b) {
+        return b == 0 ? 0 : (double) a / b;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void append(StringBuilder json, Object value, String indent) {
+        if (value instanceof Map) {
+            Map<String, Object> map = (Map<String, Object>) value;
+            if (map.isEmpty()) {
+                json.append("{}");
+                return;
+            }
+            String inner = indent + "  ";
+            json.append("{\n");
+            boolean first = true;
+            for (Map.Entry<String, Object> e : map.entrySet()) {
+                if (!first) {
+                    json.append(",\n");
+                }
+                first = false;
+                json.append(inner);
+                appendString(json, e.getKey());
+                json.append(": ");
+                append(json, e.getValue(), inner);
+            }
+            json.append('\n').append(indent).append('}');
+        } else if (value instanceof Double || value instanceof Float) {
+            double d = ((Number) value).doubleValue();
+            json.append(Double.isNaN(d) || Double.isInfinite(d) ? "null" : Double.toString(d));
+        } else if (value instanceof Number || value instanceof Boolean) {
+            json.append(value);
+        } else if (value == null) {
+            json.append("null");
+        } else {
+            appendString(json, value.toString());
+        }
+    }
+
+    private static void appendString(StringBuilder json, String s) {
+        json.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+}
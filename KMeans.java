@@ -1,73 +1,383 @@
+import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Counters;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
 
+// Iterative KMeans: one MapReduce pass per Lloyd iteration until the centroids
+// stop moving (max shift < kmeans.epsilon) or kmeans.max.iterations is reached.
+// With kmeans.input.binary=true the text input is converted to the binary point
+// store (<output>/points) before the first pass and every pass reads that instead.
+// Inputs below local.max.input.mb skip MapReduce and run every pass in-process
+// on LocalExecution.
 public class KMeans {
 
-    public static class KMapper extends Mapper<Object, Text, IntWritable, Text> {
-        private double[][] centroids = { {2.0, 2.0}, {8.0, 3.0} };
+    public static final String MAX_ITERATIONS = "kmeans.max.iterations";
+    public static final String EPSILON = "kmeans.epsilon";
+    // Convert the text input to the binary point store once, then iterate over that
+    public static final String BINARY_INPUT = "kmeans.input.binary";
 
-        public void map(Object key, Text value, Context context)
-                throws IOException, InterruptedException {
+    // Symlink name of the centroid file in the task working directory
+    public static final String CENTROIDS_LINK = "centroids";
+
+    // Seeds used when no centroid file is given on the command line
+    static final double[][] DEFAULT_CENTROIDS = { {2.0, 2.0}, {8.0, 3.0} };
+
+    // Assigns points to their nearest centroid and sums them per cluster.
+    // Points are collected into a flat batch and assigned BATCH at a time, so
+    // the centroid rows stay in cache across the whole batch. Used by the map
+    // tasks and by the in-process fast path (one per worker thread), and
+    // counts what it saw for JobMetrics.
+    static class Assigner {
+        private static final int BATCH = 64;
+
+        private final CentroidIndex index;
+        private final ClusterSumWritable[] partials;
+        private final int dims;
+        private final double[] batch;
+        private int batched;
+        private final int[] assignments = new int[BATCH];
+        private final double[] bestSq = new double[BATCH];
+
+        private final PointParser parser;
+        private final JobMetrics.Timer timer;
+        private long records;
+        private long malformed;
+        // distances of assigners merged into this one
+        private long mergedDistances;
+
+        Assigner(Configuration conf, CentroidIndex index) {
+            this.index = index;
+            parser = new PointParser(conf);
+            timer = new JobMetrics.Timer(conf, "assign");
+            dims = index.dimensions();
+            batch = new double[BATCH * dims];
+            partials = new ClusterSumWritable[index.size()];
+            for (int i = 0; i < partials.length; i++) {
+                partials[i] = new ClusterSumWritable(dims);
+            }
+        }
+
+        // False (and counted as malformed) if the point is not of the
+        // centroids' dimension, whether it came from text or the point store
+        boolean add(double[] point) {
+            if (point == null || point.length != dims) {
+                malformed++;
+                return false;
+            }
+            System.arraycopy(point, 0, batch, batched * dims, dims);
+            added();
+            return true;
+        }
+
+        // One text point as PointParser reads it, the same as the seeding and
+        // the point store
+        boolean add(String line) {
+            return add(parser.parse(line));
+        }
+
+        private void added() {
+            records++;
+            if (++batched == BATCH) {
+                flush();
+            }
+        }
+
+        // Assigns the points still waiting in the batch
+        void flush() {
+            long start = timer.start();
+            index.nearest(batch, batched, assignments, bestSq);
+            for (int p = 0; p < batched; p++) {
+                partials[assignments[p]].add(batch, p * dims);
+            }
+            batched = 0;
+            timer.stop(start);
+        }
+
+        void merge(Assigner other) {
+            flush();
+            other.flush();
+            for (int i = 0; i < partials.length; i++) {
+                partials[i].merge(other.partials[i]);
+            }
+            records += other.records;
+            malformed += other.malformed;
+            mergedDistances += other.index.distanceComputations() + other.mergedDistances;
+            timer.merge(other.timer);
+        }
+
+        void publish(TaskInputOutputContext<?, ?, ?, ?> context) {
+            context.getCounter(JobMetrics.Counters.RECORDS_IN).increment(records);
+            context.getCounter(JobMetrics.Counters.MALFORMED_RECORDS).increment(malformed);
+            context.getCounter(JobMetrics.Counters.DISTANCE_COMPUTATIONS).increment(distances());
+            timer.publish(context);
+        }
+
+        void publish(Counters counters) {
+            counters.findCounter(JobMetrics.Counters.RECORDS_IN).increment(records);
+            counters.findCounter(JobMetrics.Counters.MALFORMED_RECORDS).increment(malformed);
+            counters.findCounter(JobMetrics.Counters.DISTANCE_COMPUTATIONS).increment(distances());
+            timer.publish(counters);
+        }
+
+        private long distances() {
+            return index.distanceComputations() + mergedDistances;
+        }
+
+        // Sums per cluster; call flush() first
+        ClusterSumWritable[] partials() {
+            return partials;
+        }
+    }
 
-            String[] parts = value.toString().split(",");
-            double x = Double.parseDouble(parts[0]);
-            double y = Double.parseDouble(parts[1]);
-
-            int nearest = 0;
-            double minDist = Double.MAX_VALUE;
-            for (int i = 0; i < centroids.length; i++) {
-                double dx = x - centroids[i][0];
-                double dy = y - centroids[i][1];
-                double dist = dx * dx + dy * dy;
-                if (dist < minDist) {
-                    minDist = dist;
-                    nearest = i;
+    // Aggregates in the mapper: one ClusterSumWritable per cluster per map task
+    // is shuffled instead of one record per point. Subclasses only feed points
+    // to the assigner.
+    public static abstract class AssignMapper<V> extends Mapper<Object, V, IntWritable, ClusterSumWritable> {
+        protected Assigner assigner;
+
+        @Override
+        protected void setup(Context context) throws IOException, InterruptedException {
+            Configuration conf = context.getConfiguration();
+            assigner = new Assigner(conf, CentroidIndex.create(conf, loadCentroids(conf, context.getCacheFiles())));
+        }
+
+        @Override
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            assigner.flush();
+            ClusterSumWritable[] partials = assigner.partials();
+            for (int i = 0; i < partials.length; i++) {
+                if (partials[i].getCount() > 0) {
+                    context.write(new IntWritable(i), partials[i]);
                 }
             }
+            assigner.publish(context);
+        }
+    }
 
-            context.write(new IntWritable(nearest), new Text(x + "," + y));
+    // Text input: one point per line, as PointParser reads it ("x,y,...",
+    // "name x y" with kmeans.input.id.columns=1, ...); other lines are
+    // counted as MALFORMED_RECORDS and skipped
+    public static class KMapper extends AssignMapper<Text> {
+        public void map(Object key, Text value, Context context)
+                throws IOException, InterruptedException {
+            assigner.add(value.toString());
         }
     }
 
-    public static class KReducer extends Reducer<IntWritable, Text, IntWritable, Text> {
-        public void reduce(IntWritable key, Iterable<Text> values, Context context)
+    // Binary point store input (PointStoreInputFormat): no parsing, only the
+    // dimension check
+    public static class PointMapper extends AssignMapper<PointWritable> {
+        public void map(Object key, PointWritable value, Context context)
                 throws IOException, InterruptedException {
+            assigner.add(value.get());
+        }
+    }
+
+    // Merges the partial sums of all map tasks into the new centroid
+    public static class KReducer extends Reducer<IntWritable, ClusterSumWritable, IntWritable, Text> {
+        private JobMetrics.Timer timer;
 
-            double sumX = 0, sumY = 0;
-            int count = 0;
+        @Override
+        protected void setup(Context context) {
+            timer = new JobMetrics.Timer(context.getConfiguration(), "reduce");
+        }
+
+        public void reduce(IntWritable key, Iterable<ClusterSumWritable> values, Context context)
+                throws IOException, InterruptedException {
 
-            for (Text val : values) {
-                String[] parts = val.toString().split(",");
-                sumX += Double.parseDouble(parts[0]);
-                sumY += Double.parseDouble(parts[1]);
-                count++;
+            long start = timer.start();
+            ClusterSumWritable total = new ClusterSumWritable();
+            for (ClusterSumWritable val : values) {
+                total.merge(val);
             }
 
-            double newX = sumX / count;
-            double newY = sumY / count;
+            context.write(key, new Text(CentroidFile.format(total.centroid())));
+            context.getCounter(JobMetrics.Counters.RECORDS_OUT).increment(1);
+            timer.stop(start);
+        }
 
-            context.write(key, new Text(newX + "," + newY));
+        @Override
+        protected void cleanup(Context context) {
+            timer.publish(context);
         }
     }
 
-    public static void main(String[] args) throws Exception {
-        Configuration conf = new Configuration();
-        Job job = new Job(conf, "kmeans");
+    // Loads the centroid file once per task: from the localized cache symlink
+    // when the framework created one, otherwise straight from its URI.
+    static double[][] loadCentroids(Configuration conf, URI[] cacheFiles) throws IOException {
+        if (cacheFiles == null || cacheFiles.length == 0) {
+            throw new IOException("No centroid file in the distributed cache");
+        }
+        File local = new File(CENTROIDS_LINK);
+        Path path = local.exists() ? new Path(local.toURI()) : new Path(cacheFiles[0]);
+        return CentroidFile.read(path.getFileSystem(conf), path);
+    }
+
+    static Job createJob(Configuration conf, Path input, Path output, Path centroids, int iteration)
+            throws IOException {
+        Job job = Job.getInstance(conf, "kmeans iteration " + iteration);
         job.setJarByClass(KMeans.class);
-        job.setMapperClass(KMapper.class);
+        if (conf.getBoolean(BINARY_INPUT, false)) {
+            job.setInputFormatClass(PointStoreInputFormat.class);
+            job.setMapperClass(PointMapper.class);
+        } else {
+            job.setMapperClass(KMapper.class);
+        }
         job.setReducerClass(KReducer.class);
+        job.setMapOutputValueClass(ClusterSumWritable.class);
         job.setOutputKeyClass(IntWritable.class);
         job.setOutputValueClass(Text.class);
-        FileInputFormat.addInputPath(job, new Path(args[0]));
-        FileOutputFormat.setOutputPath(job, new Path(args[1]));
-        System.exit(job.waitForCompletion(true) ? 0 : 1);
+        job.addCacheFile(centroids.toUri().resolve("#" + CENTROIDS_LINK));
+        FileInputFormat.addInputPath(job, input);
+        FileOutputFormat.setOutputPath(job, output);
+        return job;
+    }
+
+    // One pass of KMapper + KReducer on LocalExecution, writing the same
+    // iter-N/part-r-00000 the job would; returns the counters the job would have
+    static Counters runLocal(final Configuration conf, Path input, Path output, final double[][] centroids)
+            throws IOException {
+        Assigner assigner = LocalExecution.run(conf, input, new LocalExecution.LineAggregator<Assigner>() {
+            public Assigner create() {
+                return new Assigner(conf, CentroidIndex.create(conf, centroids));
+            }
+
+            public void line(Assigner partial, byte[] bytes, int start, int len) {
+                partial.add(new String(bytes, start, len, StandardCharsets.UTF_8));
+            }
+
+            public Assigner merge(Assigner a, Assigner b) {
+                a.merge(b);
+                return a;
+            }
+        });
+        assigner.flush();
+
+        Counters counters = new Counters();
+        assigner.publish(counters);
+        ClusterSumWritable[] totals = assigner.partials();
+        Writer writer = new OutputStreamWriter(LocalExecution.createOutput(conf, output), StandardCharsets.UTF_8);
+        try {
+            for (int i = 0; i < totals.length; i++) {
+                if (totals[i].getCount() > 0) {
+                    writer.write(i + "\t" + CentroidFile.format(totals[i].centroid()) + "\n");
+                    counters.findCounter(JobMetrics.Counters.RECORDS_OUT).increment(1);
+                }
+            }
+        } finally {
+            writer.close();
+        }
+        LocalExecution.markSuccess(conf, output);
+        return counters;
+    }
+
+    // Runs iterations until convergence. Each pass writes its reducer output to
+    // <output>/iter-N and the merged centroids to <output>/centroids-N, which is
+    // the centroid file of the next pass. Every pass leaves a JobMetrics report
+    // in iter-N/_metrics.json, and the run a summary in <output>/_metrics.json.
+    public static boolean run(Configuration conf, Path input, Path output, double[][] seeds)
+            throws Exception {
+        int maxIterations = conf.getInt(MAX_ITERATIONS, 20);
+        double epsilon = conf.getDouble(EPSILON, 1e-4);
+        FileSystem fs = output.getFileSystem(conf);
+
+        // Small inputs: iterate in this JVM instead of submitting a job per pass
+        boolean local = LocalExecution.useLocal(conf, input);
+        if (local) {
+            System.out.println("Input is below the " + LocalExecution.MAX_INPUT_MB + " threshold, iterating in-process");
+        } else if (conf.getBoolean(BINARY_INPUT, false)) {
+            // Converted once per run; output must be new, like every other job's
+            Path points = new Path(output, "points");
+            if (!PointStoreConverter.run(conf, input, points)) {
+                return false;
+            }
+            input = points;
+        }
+
+        double[][] centroids = seeds;
+        Path current = fs.makeQualified(new Path(output, "centroids-0"));
+        CentroidFile.write(fs, current, centroids);
+
+        long runStart = System.currentTimeMillis();
+        int iterations = 0;
+        double shift = Double.NaN;
+        for (int i = 1; i <= maxIterations; i++) {
+            Path iterOutput = new Path(output, "iter-" + i);
+            long start = System.currentTimeMillis();
+            JobMetrics.Report report;
+            if (local) {
+                Counters counters = runLocal(conf, input, iterOutput, centroids);
+                report = new JobMetrics.Report("kmeans iteration " + i).set("mode", "local")
+                        .set("wall_millis", System.currentTimeMillis() - start).counters(counters);
+            } else {
+                Job job = createJob(conf, input, iterOutput, current, i);
+                boolean ok = job.waitForCompletion(true);
+                report = JobMetrics.report(job, System.currentTimeMillis() - start);
+                if (!ok) {
+                    report.write(conf, new Path(iterOutput, JobMetrics.REPORT_FILE));
+                    return false;
+                }
+            }
+
+            double[][] next = CentroidFile.readOutput(fs, iterOutput, centroids);
+            current = fs.makeQualified(new Path(output, "centroids-" + i));
+            CentroidFile.write(fs, current, next);
+
+            shift = CentroidFile.maxShift(centroids, next);
+            centroids = next;
+            iterations = i;
+            report.set("iteration", i).set("k", centroids.length).set("max_shift", shift)
+                    .write(conf, new Path(iterOutput, JobMetrics.REPORT_FILE));
+            System.out.println("Iteration " + i + ": max centroid shift = " + shift);
+            if (shift < epsilon) {
+                System.out.println("Converged after " + i + " iterations");
+                break;
+            }
+        }
+        new JobMetrics.Report("kmeans").set("mode", local ? "local" : "mapreduce")
+                .set("wall_millis", System.currentTimeMillis() - runStart)
+                .set("iterations", iterations).set("converged", shift < epsilon)
+                .set("final_shift", shift).set("centroids", current.toString())
+                .write(conf, new Path(output, JobMetrics.REPORT_FILE));
+        System.out.println("Final centroids: " + current);
+        return true;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Configuration conf = new Configuration();
+        String[] rest = new GenericOptionsParser(conf, args).getRemainingArgs();
+        if (rest.length < 2) {
+            System.err.println("Usage: KMeans [-D kmeans.max.iterations=N] [-D kmeans.epsilon=E]"
+                    + " [-D kmeans.k=K] [-D kmeans.input.binary=true] <input> <output> [initial centroid file]");
+            System.exit(2);
+        }
+
+        Path input = new Path(rest[0]);
+        Path output = new Path(rest[1]);
+        // Seeds: the given file, else k-means|| when kmeans.k is set, else the defaults
+        double[][] seeds = DEFAULT_CENTROIDS;
+        if (rest.length > 2) {
+            Path seedPath = new Path(rest[2]);
+            seeds = CentroidFile.read(seedPath.getFileSystem(conf), seedPath);
+        } else if (conf.get(KMeansParallelInit.K) != null) {
+            seeds = KMeansParallelInit.run(conf, input, new Path(output, "centroids-init"));
+        }
+
+        System.exit(run(conf, input, output, seeds) ? 0 : 1);
     }
 }
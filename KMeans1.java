@@ -1,7 +1,10 @@
+import java.io.File;
 import java.io.IOException;
+import java.net.URI;
 import java.util.Iterator;
 import java.util.StringTokenizer;
 
+import org.apache.hadoop.filecache.DistributedCache;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.Text;
@@ -18,48 +21,63 @@ import org.apache.hadoop.mapred.FileOutputFormat;
 // Regular KMeans clustering using Hadoop 1.x
 public class KMeans {
 
-    // Initial centroids (hardcoded for simplicity)
-    public static double[][] centroids = {
+    // Name of the seed file's symlink in the task's working directory
+    static final String CENTROIDS_LINK = "centroids";
+
+    // Initial centroids, used when no seed file is given
+    public static final double[][] DEFAULT_CENTROIDS = {
         {2.0, 2.0}, 
         {8.0, 8.0}
     };
 
     // ---------------- Mapper ----------------
     public static class KMeansMapper extends MapReduceBase
-            implements Mapper<Object, Text, IntWritable, Text> {
+            implements Mapper<Object, Text, IntWritable, PointWritable> {
+
+        private final PointWritable point = new PointWritable(new double[2]);
+        private CentroidIndex index;
+
+        @SuppressWarnings("deprecation")
+        public void configure(JobConf job) {
+            double[][] centroids = DEFAULT_CENTROIDS;
+            try {
+                // Seeds travel in the distributed cache: the driver's memory is not in this JVM
+                URI[] cached = DistributedCache.getCacheFiles(job);
+                if (cached != null && cached.length > 0) {
+                    File local = new File(CENTROIDS_LINK);
+                    Path path = local.exists() ? new Path(local.toURI()) : new Path(cached[0]);
+                    centroids = CentroidFile.read(path.getFileSystem(job), path);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Cannot load centroids", e);
+            }
+            index = CentroidIndex.create(job, centroids);
+        }
 
         public void map(Object key, Text value,
-                        OutputCollector<IntWritable, Text> output,
+                        OutputCollector<IntWritable, PointWritable> output,
                         Reporter reporter) throws IOException {
 
             StringTokenizer st = new StringTokenizer(value.toString());
             double x = Double.parseDouble(st.nextToken());
             double y = Double.parseDouble(st.nextToken());
 
+            point.get()[0] = x;
+            point.get()[1] = y;
+
             // Find the closest centroid
-            int closestCluster = -1;
-            double minDistance = Double.MAX_VALUE;
-
-            for (int i = 0; i < centroids.length; i++) {
-                double dx = x - centroids[i][0];
-                double dy = y - centroids[i][1];
-                double distance = dx*dx + dy*dy; // Euclidean distance squared
-                if (distance < minDistance) {
-                    minDistance = distance;
-                    closestCluster = i;
-                }
-            }
+            int closestCluster = index.nearest(point.get());
 
             // Emit clusterId as key, point as value
-            output.collect(new IntWritable(closestCluster), new Text(x + "," + y));
+            output.collect(new IntWritable(closestCluster), point);
         }
     }
 
     // ---------------- Reducer ----------------
     public static class KMeansReducer extends MapReduceBase
-            implements Reducer<IntWritable, Text, IntWritable, Text> {
+            implements Reducer<IntWritable, PointWritable, IntWritable, Text> {
 
-        public void reduce(IntWritable key, Iterator<Text> values,
+        public void reduce(IntWritable key, Iterator<PointWritable> values,
                            OutputCollector<IntWritable, Text> output,
                            Reporter reporter) throws IOException {
 
@@ -67,9 +85,9 @@ public class KMeans {
             int count = 0;
 
             while (values.hasNext()) {
-                String[] parts = values.next().toString().split(",");
-                sumX += Double.parseDouble(parts[0]);
-                sumY += Double.parseDouble(parts[1]);
+                double[] point = values.next().get();
+                sumX += point[0];
+                sumY += point[1];
                 count++;
             }
 
@@ -82,10 +100,12 @@ public class KMeans {
     }
 
     // ---------------- Main ----------------
+    @SuppressWarnings("deprecation")
     public static void main(String[] args) throws Exception {
         JobConf conf = new JobConf(KMeans.class);
         conf.setJobName("kmeans");
 
+        conf.setMapOutputValueClass(PointWritable.class);
         conf.setOutputKeyClass(IntWritable.class);
         conf.setOutputValueClass(Text.class);
 
@@ -95,6 +115,13 @@ public class KMeans {
         FileInputFormat.addInputPath(conf, new Path(args[0]));
         FileOutputFormat.setOutputPath(conf, new Path(args[1]));
 
+        // Optional seed file, e.g. written by KMeansParallelInit, shipped to the mappers
+        if (args.length > 2) {
+            Path seeds = new Path(args[2]);
+            seeds = seeds.getFileSystem(conf).makeQualified(seeds);
+            DistributedCache.addCacheFile(seeds.toUri().resolve("#" + CENTROIDS_LINK), conf);
+        }
+
         JobClient.runJob(conf);
     }
 }
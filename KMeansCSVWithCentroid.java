@@ -0,0 +1,231 @@
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.apache.hadoop.filecache.DistributedCache;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.*;
+import org.apache.hadoop.mapred.lib.MultipleOutputs;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+// One KMeans pass over "ID,math,science,english" records with the old API.
+//
+// Centroids live in versioned files <centroid dir>/centroids-N (default
+// <output>_centroids, or -D kmeans.centroids.dir=...). A run reads the
+// latest version, ships it to the tasks through the distributed cache and
+// publishes the reducers' new centroids as version N+1, so running the job
+// again continues from where the previous run stopped. A seed file argument
+// (or the built-in seeds when there is no version yet) starts a new version.
+public class KMeansCSVWithCentroid {
+
+    public static final String CENTROIDS_DIR = "kmeans.centroids.dir";
+
+    // Named output holding one "id<TAB>cluster" line per student
+    public static final String MEMBERS = "members";
+    // Named output holding the new centroids in CentroidFile format
+    public static final String CENTROIDS = "centroids";
+
+    // Initial centroids (example K=2)
+    private static final double[][] DEFAULT_CENTROIDS = {
+            {30.0, 25.0, 50.0}, // low performers
+            {80.0, 85.0, 79.0}  // high performers
+    };
+
+    // --- Mapper ---
+    // Sums the scores per cluster and emits one ClusterSumWritable per cluster
+    // when the task ends. Membership is written straight from the map side,
+    // so student ids never go through the shuffle or sit in reducer memory.
+    // Records without three numeric scores are counted and skipped.
+    public static class KMeansMapper extends MapReduceBase
+            implements Mapper<Object, Text, IntWritable, ClusterSumWritable> {
+
+        private final double[] point = new double[3];
+        private CentroidIndex index;
+        private ClusterSumWritable[] partials;
+        private OutputCollector<IntWritable, ClusterSumWritable> output;
+        private Reporter reporter;
+        private JobMetrics.Timer timer;
+
+        private MultipleOutputs members;
+        private final Text id = new Text();
+        private final IntWritable cluster = new IntWritable();
+
+        @SuppressWarnings("deprecation")
+        public void configure(JobConf job) {
+            try {
+                // Loaded once per task from the cached centroid file
+                index = CentroidIndex.create(job, KMeans.loadCentroids(job, DistributedCache.getCacheFiles(job)));
+            } catch (IOException e) {
+                throw new RuntimeException("Cannot load centroids", e);
+            }
+            partials = new ClusterSumWritable[index.size()];
+            for (int i = 0; i < partials.length; i++) {
+                partials[i] = new ClusterSumWritable(point.length);
+            }
+            members = new MultipleOutputs(job);
+            timer = new JobMetrics.Timer(job, "map");
+        }
+
+        @SuppressWarnings("unchecked")
+        public void map(Object key, Text value, OutputCollector<IntWritable, ClusterSumWritable> output,
+                        Reporter reporter) throws IOException {
+            this.output = output;
+            this.reporter = reporter;
+            String line = value.toString().trim();
+            if (line.startsWith("ID") || line.isEmpty()) return; // skip header
+
+            long start = timer.start();
+            String[] parts = line.split(",");
+            try {
+                if (parts.length < 4) {
+                    throw new NumberFormatException("expected ID,math,science,english");
+                }
+                point[0] = Double.parseDouble(parts[1]); // math
+                point[1] = Double.parseDouble(parts[2]); // science
+                point[2] = Double.parseDouble(parts[3]); // english
+            } catch (NumberFormatException e) {
+                reporter.incrCounter(JobMetrics.Counters.MALFORMED_RECORDS, 1);
+                return;
+            }
+
+            // Find nearest centroid
+            int nearest = index.nearest(point);
+            partials[nearest].add(point);
+
+            id.set(parts[0]);
+            cluster.set(nearest);
+            members.getCollector(MEMBERS, reporter).collect(id, cluster);
+            reporter.incrCounter(JobMetrics.Counters.RECORDS_IN, 1);
+            timer.stop(start);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (output != null) {
+                for (int i = 0; i < partials.length; i++) {
+                    if (partials[i].getCount() > 0) {
+                        output.collect(new IntWritable(i), partials[i]);
+                    }
+                }
+                // close() gets no Reporter: use the one map() was given
+                reporter.incrCounter(JobMetrics.Counters.DISTANCE_COMPUTATIONS, index.distanceComputations());
+                timer.publish(reporter);
+            }
+            members.close();
+        }
+    }
+
+    // --- Reducer ---
+    // Only the per-cluster sums reach the reducer; the member list is in the
+    // "members" output. New centroids go to the "centroids" output, which the
+    // driver publishes as the next centroid version.
+    public static class KMeansReducer extends MapReduceBase
+            implements Reducer<IntWritable, ClusterSumWritable, IntWritable, Text> {
+
+        private MultipleOutputs outputs;
+
+        public void configure(JobConf job) {
+            outputs = new MultipleOutputs(job);
+        }
+
+        @SuppressWarnings("unchecked")
+        public void reduce(IntWritable key, Iterator<ClusterSumWritable> values,
+                           OutputCollector<IntWritable, Text> output,
+                           Reporter reporter) throws IOException {
+            ClusterSumWritable total = new ClusterSumWritable();
+            while (values.hasNext()) {
+                total.merge(values.next());
+            }
+            double[] centroid = total.centroid();
+            outputs.getCollector(CENTROIDS, reporter).collect(key, new Text(CentroidFile.format(centroid)));
+
+            // Output format: Centroid=(...) Members=<count>
+            String centroidStr = String.format("(%.2f,%.2f,%.2f)", centroid[0], centroid[1], centroid[2]);
+            output.collect(key, new Text("Centroid=" + centroidStr + " Members=" + total.getCount()));
+            reporter.incrCounter(JobMetrics.Counters.RECORDS_OUT, 1);
+        }
+
+        @Override
+        public void close() throws IOException {
+            outputs.close();
+        }
+    }
+
+    // Highest N of the centroids-N files in dir, or -1 if there are none
+    static int latestVersion(FileSystem fs, Path dir) throws IOException {
+        int latest = -1;
+        if (!fs.exists(dir)) {
+            return latest;
+        }
+        for (FileStatus status : fs.listStatus(dir)) {
+            String name = status.getPath().getName();
+            if (name.startsWith("centroids-")) {
+                try {
+                    latest = Math.max(latest, Integer.parseInt(name.substring("centroids-".length())));
+                } catch (NumberFormatException e) {
+                    // not a version file
+                }
+            }
+        }
+        return latest;
+    }
+
+    // --- Driver ---
+    @SuppressWarnings("deprecation")
+    public static void main(String[] args) throws Exception {
+        JobConf conf = new JobConf(KMeansCSVWithCentroid.class);
+        conf.setJobName("KMeansCSVWithCentroid");
+        args = new GenericOptionsParser(conf, args).getRemainingArgs();
+
+        conf.setMapperClass(KMeansMapper.class);
+        conf.setReducerClass(KMeansReducer.class);
+
+        conf.setMapOutputValueClass(ClusterSumWritable.class);
+        conf.setOutputKeyClass(IntWritable.class);
+        conf.setOutputValueClass(Text.class);
+        MultipleOutputs.addNamedOutput(conf, MEMBERS, TextOutputFormat.class, Text.class, IntWritable.class);
+        MultipleOutputs.addNamedOutput(conf, CENTROIDS, TextOutputFormat.class, IntWritable.class, Text.class);
+
+        Path output = new Path(args[1]);
+        FileInputFormat.addInputPath(conf, new Path(args[0]));
+        FileOutputFormat.setOutputPath(conf, output);
+
+        FileSystem fs = output.getFileSystem(conf);
+        Path dir = fs.makeQualified(new Path(conf.get(CENTROIDS_DIR, args[1] + "_centroids")));
+        int version = latestVersion(fs, dir);
+        double[][] centroids;
+        if (args.length > 2 || version < 0) {
+            // Seed file, e.g. written by KMeansParallelInit -D kmeans.input.id.columns=1
+            if (args.length > 2) {
+                Path seeds = new Path(args[2]);
+                centroids = CentroidFile.read(seeds.getFileSystem(conf), seeds);
+            } else {
+                centroids = DEFAULT_CENTROIDS;
+            }
+            version++;
+            CentroidFile.write(fs, new Path(dir, "centroids-" + version), centroids);
+        } else {
+            centroids = CentroidFile.read(fs, new Path(dir, "centroids-" + version));
+        }
+        Path current = new Path(dir, "centroids-" + version);
+        DistributedCache.addCacheFile(current.toUri().resolve("#" + KMeans.CENTROIDS_LINK), conf);
+
+        long start = System.currentTimeMillis();
+        RunningJob job = JobClient.runJob(conf);
+        long wallMillis = System.currentTimeMillis() - start;
+
+        // Publish the reducers' centroids; empty clusters keep their old centroid
+        double[][] next = CentroidFile.readOutput(fs, output, CENTROIDS + "-", centroids);
+        Path published = new Path(dir, "centroids-" + (version + 1));
+        CentroidFile.write(fs, published, next);
+        double shift = CentroidFile.maxShift(centroids, next);
+        System.out.println("Centroids " + current.getName() + " -> " + published + ", max shift = " + shift);
+
+        JobMetrics.report(job, wallMillis).set("iteration", version + 1).set("k", next.length)
+                .set("max_shift", shift).set("centroids", published.toString())
+                .write(conf, new Path(output, JobMetrics.REPORT_FILE));
+    }
+}
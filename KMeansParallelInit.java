@@ -0,0 +1,326 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+// k-means|| (scalable k-means++, Bahmani et al.) seeding for the KMeans jobs.
+//
+// Starting from one random point, each round is a map-only pass that adds
+// every point x to the candidate set with probability l * d(x,C)^2 / cost(C)
+// (l = oversampling factor). A last pass counts how many points are closest
+// to each candidate, and the driver reduces the few hundred weighted
+// candidates to K seeds with weighted k-means++ plus a few local Lloyd
+// iterations. The result is written as a centroid file for KMeans.
+//
+// Each pass samples with the cost measured by the previous pass. That cost
+// can only be higher than the current one, so a round samples at most l
+// points in expectation and no separate cost pass is needed per round.
+public class KMeansParallelInit {
+
+    public static final String K = "kmeans.k";
+    public static final String ROUNDS = "kmeans.init.rounds";
+    public static final String OVERSAMPLING = "kmeans.init.oversampling";
+    public static final String SEED = "kmeans.init.seed";
+
+    static final String PREVIOUS_COST = "kmeans.init.previous.cost";
+    static final String ROUND = "kmeans.init.round";
+    static final String COST_OUTPUT = "cost";
+
+    // Computes the cost of the current candidates and samples new ones
+    public static class SampleMapper extends Mapper<Object, Text, NullWritable, Text> {
+        private PointParser parser;
+        private CentroidIndex candidates;
+        private Random random;
+        private double oversampling;
+        private double previousCost;
+        private double cost;
+        private MultipleOutputs<NullWritable, Text> costs;
+
+        @Override
+        protected void setup(Context context) throws IOException, InterruptedException {
+            Configuration conf = context.getConfiguration();
+            parser = new PointParser(conf);
+            candidates = CentroidIndex.create(conf, KMeans.loadCentroids(conf, context.getCacheFiles()));
+            oversampling = conf.getDouble(OVERSAMPLING, 2.0 * conf.getInt(K, 2));
+            previousCost = conf.getDouble(PREVIOUS_COST, 0);
+            random = new Random(conf.getLong(SEED, 42L) * 1000003L + conf.getInt(ROUND, 0) * 7919L
+                    + context.getTaskAttemptID().getTaskID().getId());
+            costs = new MultipleOutputs<NullWritable, Text>(context);
+        }
+
+        public void map(Object key, Text value, Context context)
+                throws IOException, InterruptedException {
+            double[] point = parser.parse(value.toString());
+            if (point == null) return;
+
+            int nearest = candidates.nearest(point);
+            double dSq = candidates.distanceSq(point, nearest);
+            cost += dSq;
+
+            if (previousCost > 0 && random.nextDouble() * previousCost < oversampling * dSq) {
+                context.write(NullWritable.get(), new Text(CentroidFile.format(point)));
+            }
+        }
+
+        @Override
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            costs.write(COST_OUTPUT, NullWritable.get(), new Text(Double.toString(cost)));
+            costs.close();
+        }
+    }
+
+    // Counts the points closest to each candidate: one "candidate<TAB>count" line per candidate per task
+    public static class WeightMapper extends Mapper<Object, Text, NullWritable, Text> {
+        private PointParser parser;
+        private CentroidIndex candidates;
+        private long[] counts;
+
+        @Override
+        protected void setup(Context context) throws IOException, InterruptedException {
+            Configuration conf = context.getConfiguration();
+            parser = new PointParser(conf);
+            candidates = CentroidIndex.create(conf, KMeans.loadCentroids(conf, context.getCacheFiles()));
+            counts = new long[candidates.size()];
+        }
+
+        public void map(Object key, Text value, Context context)
+                throws IOException, InterruptedException {
+            double[] point = parser.parse(value.toString());
+            if (point != null) {
+                counts[candidates.nearest(point)]++;
+            }
+        }
+
+        @Override
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    context.write(NullWritable.get(), new Text(i + "\t" + counts[i]));
+                }
+            }
+        }
+    }
+
+    // Picks K seeds for the points under input and writes them to seedFile
+    public static double[][] run(Configuration conf, Path input, Path seedFile) throws Exception {
+        int k = conf.getInt(K, 2);
+        int rounds = conf.getInt(ROUNDS, 5);
+        Random random = new Random(conf.getLong(SEED, 42L));
+
+        FileSystem fs = seedFile.getFileSystem(conf);
+        Path work = new Path(seedFile.getParent(), seedFile.getName() + "-work");
+        fs.delete(work, true);
+
+        List<double[]> candidates = new ArrayList<double[]>();
+        candidates.add(firstPoint(conf, input, random));
+
+        double cost = 0;
+        for (int round = 0; round <= rounds; round++) {
+            Path candidateFile = fs.makeQualified(new Path(work, "candidates-" + round));
+            CentroidFile.write(fs, candidateFile, candidates.toArray(new double[candidates.size()][]));
+
+            Configuration roundConf = new Configuration(conf);
+            roundConf.setInt(ROUND, round);
+            roundConf.setDouble(PREVIOUS_COST, cost);
+            Path roundOutput = new Path(work, "round-" + round);
+            Job job = createJob(roundConf, "k-means|| round " + round, SampleMapper.class,
+                    input, roundOutput, candidateFile);
+            MultipleOutputs.addNamedOutput(job, COST_OUTPUT, TextOutputFormat.class, NullWritable.class, Text.class);
+            if (!job.waitForCompletion(true)) {
+                throw new IOException("k-means|| round " + round + " failed");
+            }
+
+            cost = 0;
+            for (String line : readLines(fs, roundOutput, COST_OUTPUT + "-")) {
+                cost += Double.parseDouble(line);
+            }
+            int sampled = 0;
+            for (String line : readLines(fs, roundOutput, "part-")) {
+                candidates.add(CentroidFile.parse(line));
+                sampled++;
+            }
+            System.out.println("k-means|| round " + round + ": cost = " + cost
+                    + ", sampled " + sampled + ", candidates " + candidates.size());
+        }
+
+        double[][] candidateArray = candidates.toArray(new double[candidates.size()][]);
+        Path candidateFile = fs.makeQualified(new Path(work, "candidates-final"));
+        CentroidFile.write(fs, candidateFile, candidateArray);
+        Path weightOutput = new Path(work, "weights");
+        Job job = createJob(conf, "k-means|| weights", WeightMapper.class, input, weightOutput, candidateFile);
+        if (!job.waitForCompletion(true)) {
+            throw new IOException("k-means|| weighting failed");
+        }
+        long[] weights = new long[candidateArray.length];
+        for (String line : readLines(fs, weightOutput, "part-")) {
+            String[] parts = line.split("\t");
+            weights[Integer.parseInt(parts[0])] += Long.parseLong(parts[1]);
+        }
+
+        double[][] seeds = reduceCandidates(candidateArray, weights, k, random, 10);
+        CentroidFile.write(fs, seedFile, seeds);
+        fs.delete(work, true);
+        return seeds;
+    }
+
+    static Job createJob(Configuration conf, String name, Class<? extends Mapper<?, ?, ?, ?>> mapper,
+                         Path input, Path output, Path candidates) throws IOException {
+        Job job = Job.getInstance(conf, name);
+        job.setJarByClass(KMeansParallelInit.class);
+        job.setMapperClass(mapper);
+        job.setNumReduceTasks(0);
+        job.setOutputKeyClass(NullWritable.class);
+        job.setOutputValueClass(Text.class);
+        job.addCacheFile(candidates.toUri().resolve("#" + KMeans.CENTROIDS_LINK));
+        FileInputFormat.addInputPath(job, input);
+        FileOutputFormat.setOutputPath(job, output);
+        return job;
+    }
+
+    // Weighted k-means++ over the candidates followed by weighted Lloyd iterations
+    static double[][] reduceCandidates(double[][] candidates, long[] weights, int k,
+                                       Random random, int iterations) {
+        if (candidates.length < k) {
+            // fewer seeds would silently change K for every job that uses them
+            throw new IllegalArgumentException("k-means|| found only " + candidates.length
+                    + " candidates for K = " + k + "; raise " + OVERSAMPLING + " or " + ROUNDS
+                    + ", or lower " + K);
+        }
+        if (candidates.length == k) {
+            return candidates;
+        }
+
+        double[][] seeds = new double[k][];
+        double[] minDist = new double[candidates.length];
+        Arrays.fill(minDist, Double.MAX_VALUE);
+        seeds[0] = candidates[pick(weights, null, random)].clone();
+        for (int s = 1; s < k; s++) {
+            for (int i = 0; i < candidates.length; i++) {
+                minDist[i] = Math.min(minDist[i], CentroidIndex.distanceSq(candidates[i], seeds[s - 1]));
+            }
+            seeds[s] = candidates[pick(weights, minDist, random)].clone();
+        }
+
+        int dims = seeds[0].length;
+        for (int it = 0; it < iterations; it++) {
+            CentroidIndex index = new CentroidIndex(seeds);
+            double[][] sums = new double[k][dims];
+            long[] counts = new long[k];
+            for (int i = 0; i < candidates.length; i++) {
+                int c = index.nearest(candidates[i]);
+                for (int j = 0; j < dims; j++) {
+                    sums[c][j] += weights[i] * candidates[i][j];
+                }
+                counts[c] += weights[i];
+            }
+            for (int c = 0; c < k; c++) {
+                if (counts[c] == 0) continue;
+                for (int j = 0; j < dims; j++) {
+                    seeds[c][j] = sums[c][j] / counts[c];
+                }
+            }
+        }
+        return seeds;
+    }
+
+    // Index drawn with probability proportional to weight (times dist, when given)
+    private static int pick(long[] weights, double[] dist, Random random) {
+        double total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            total += weights[i] * (dist == null ? 1 : dist[i]);
+        }
+        double r = random.nextDouble() * total;
+        int last = 0;
+        for (int i = 0; i < weights.length; i++) {
+            double w = weights[i] * (dist == null ? 1 : dist[i]);
+            if (w <= 0) continue;
+            last = i;
+            r -= w;
+            if (r < 0) return i;
+        }
+        return last;
+    }
+
+    // The first center: a random point among the first ones of the input
+    private static double[] firstPoint(Configuration conf, Path input, Random random) throws IOException {
+        FileSystem fs = input.getFileSystem(conf);
+        PointParser parser = new PointParser(conf);
+        List<double[]> points = new ArrayList<double[]>();
+        List<FileStatus> files = new ArrayList<FileStatus>();
+        FileStatus status = fs.getFileStatus(input);
+        if (status.isDirectory()) {
+            for (FileStatus child : fs.listStatus(input)) {
+                String name = child.getPath().getName();
+                if (child.isFile() && !name.startsWith("_") && !name.startsWith(".")) files.add(child);
+            }
+        } else {
+            files.add(status);
+        }
+
+        for (FileStatus file : files) {
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(fs.open(file.getPath()), StandardCharsets.UTF_8));
+            try {
+                String line;
+                while (points.size() < 10000 && (line = reader.readLine()) != null) {
+                    double[] point = parser.parse(line);
+                    if (point != null) points.add(point);
+                }
+            } finally {
+                reader.close();
+            }
+            if (points.size() >= 10000) break;
+        }
+        if (points.isEmpty()) {
+            throw new IOException("No points found under " + input);
+        }
+        return points.get(random.nextInt(points.size()));
+    }
+
+    private static List<String> readLines(FileSystem fs, Path dir, String prefix) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        for (FileStatus status : fs.listStatus(dir)) {
+            if (!status.getPath().getName().startsWith(prefix)) continue;
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(fs.open(status.getPath()), StandardCharsets.UTF_8));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isEmpty()) lines.add(line);
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        return lines;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Configuration conf = new Configuration();
+        String[] rest = new GenericOptionsParser(conf, args).getRemainingArgs();
+        if (rest.length < 2) {
+            System.err.println("Usage: KMeansParallelInit -D kmeans.k=K [-D kmeans.init.rounds=R]"
+                    + " [-D kmeans.init.oversampling=L] [-D kmeans.input.id.columns=N] <input> <seed file>");
+            System.exit(2);
+        }
+        run(conf, new Path(rest[0]), new Path(rest[1]));
+    }
+}
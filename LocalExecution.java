@@ -0,0 +1,257 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.mapred.FileAlreadyExistsException;
+
+// In-process fast path for small inputs. Instead of submitting a job, the
+// driver runs the same map and reduce logic itself: input files are
+// memory-mapped (local files) or read in one go (other file systems), cut
+// into newline-aligned chunks and processed on a fork-join pool, one partial
+// result per chunk, merged pairwise as the tasks join.
+//
+// Drivers call useLocal() first; inputs larger than local.max.input.mb
+// (default 256, 0 disables the fast path), compressed inputs and input
+// directories with subdirectories always go through MapReduce. Only WordCount
+// and KMeans use it; StudentKMeans and KMeansCSVWithCentroid always submit
+// jobs. Results are written as <output>/part-r-00000 plus
+// _SUCCESS, the layout of a one-reducer job.
+public class LocalExecution {
+
+    public static final String MAX_INPUT_MB = "local.max.input.mb";
+    // Worker threads, default one per core
+    public static final String THREADS = "local.threads";
+
+    private static final int MIN_CHUNK = 1 << 20;
+
+    // The map and reduce logic of a job, applied per line
+    public interface LineAggregator<R> {
+        // An empty partial result, used by one worker at a time
+        R create();
+
+        // bytes[start .. start + len) is one line without its terminator
+        void line(R partial, byte[] bytes, int start, int len) throws IOException;
+
+        // Combines two partials; may return either one
+        R merge(R a, R b);
+    }
+
+    public static boolean useLocal(Configuration conf, Path input) throws IOException {
+        long max = Math.min(conf.getLong(MAX_INPUT_MB, 256) << 20, Integer.MAX_VALUE);
+        if (max <= 0) {
+            return false;
+        }
+        FileSystem fs = input.getFileSystem(conf);
+        if (!fs.exists(input)) {
+            return false;
+        }
+        CompressionCodecFactory codecs = new CompressionCodecFactory(conf);
+        long total = 0;
+        for (FileStatus file : files(fs, input)) {
+            // subdirectories: leave them to FileInputFormat and its settings
+            if (file.isDirectory() || codecs.getCodec(file.getPath()) != null) {
+                return false;
+            }
+            total += file.getLen();
+        }
+        return total <= max;
+    }
+
+    public static <R> R run(Configuration conf, Path input, LineAggregator<R> aggregator) throws IOException {
+        int threads = conf.getInt(THREADS, Runtime.getRuntime().availableProcessors());
+        FileSystem fs = input.getFileSystem(conf);
+
+        List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+        long total = 0;
+        for (FileStatus file : files(fs, input)) {
+            if (file.isDirectory()) {
+                throw new IOException("Not a file: " + file.getPath());
+            }
+            ByteBuffer buffer = load(fs, file);
+            buffers.add(buffer);
+            total += buffer.remaining();
+        }
+
+        // A few chunks per thread so uneven lines still balance out
+        int chunkSize = (int) Math.max(MIN_CHUNK, total / (threads * 4L));
+        List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+        for (ByteBuffer buffer : buffers) {
+            split(buffer, chunkSize, chunks);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return pool.invoke(new ChunkTask<R>(aggregator, chunks, 0, chunks.size()));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Creates <output>/part-r-00000; fails like FileOutputFormat if output exists
+    public static FSDataOutputStream createOutput(Configuration conf, Path output) throws IOException {
+        FileSystem fs = output.getFileSystem(conf);
+        if (fs.exists(output)) {
+            throw new FileAlreadyExistsException("Output directory " + output + " already exists");
+        }
+        fs.mkdirs(output);
+        return fs.create(new Path(output, "part-r-00000"), false);
+    }
+
+    public static void markSuccess(Configuration conf, Path output) throws IOException {
+        FileSystem fs = output.getFileSystem(conf);
+        fs.create(new Path(output, "_SUCCESS"), true).close();
+    }
+
+    // What FileInputFormat would list by default: the input file, or the
+    // entries directly under the input directory, skipping _ and . names.
+    // Not recursive, so subdirectories come back as directories.
+    private static List<FileStatus> files(FileSystem fs, Path input) throws IOException {
+        List<FileStatus> files = new ArrayList<FileStatus>();
+        if (hidden(input)) {
+            return files;
+        }
+        for (FileStatus file : fs.listStatus(input)) {
+            if (!hidden(file.getPath())) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    private static boolean hidden(Path path) {
+        String name = path.getName();
+        return name.startsWith("_") || name.startsWith(".");
+    }
+
+    private static ByteBuffer load(FileSystem fs, FileStatus file) throws IOException {
+        Path path = fs.makeQualified(file.getPath());
+        if ("file".equals(path.toUri().getScheme())) {
+            FileChannel channel = FileChannel.open(new File(path.toUri()).toPath(), StandardOpenOption.READ);
+            try {
+                // The mapping stays valid after the channel is closed
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                channel.close();
+            }
+        }
+        byte[] bytes = new byte[(int) file.getLen()];
+        FSDataInputStream in = fs.open(path);
+        try {
+            in.readFully(0, bytes);
+        } finally {
+            in.close();
+        }
+        return ByteBuffer.wrap(bytes);
+    }
+
+    // Cuts buffer into slices of about chunkSize bytes, each ending after a newline
+    private static void split(ByteBuffer buffer, int chunkSize, List<ByteBuffer> chunks) {
+        int limit = buffer.limit();
+        int start = buffer.position();
+        while (start < limit) {
+            int end = (int) Math.min((long) start + chunkSize, limit);
+            while (end < limit && buffer.get(end - 1) != '\n') {
+                end++;
+            }
+            ByteBuffer chunk = buffer.duplicate();
+            chunk.position(start);
+            chunk.limit(end);
+            chunks.add(chunk.slice());
+            start = end;
+        }
+    }
+
+    private static class ChunkTask<R> extends RecursiveTask<R> {
+        private static final long serialVersionUID = 1L;
+
+        private final LineAggregator<R> aggregator;
+        private final List<ByteBuffer> chunks;
+        private final int from;
+        private final int to;
+
+        ChunkTask(LineAggregator<R> aggregator, List<ByteBuffer> chunks, int from, int to) {
+            this.aggregator = aggregator;
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected R compute() {
+            if (to - from <= 1) {
+                R partial = aggregator.create();
+                if (from < to) {
+                    try {
+                        process(chunks.get(from), partial);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return partial;
+            }
+            int mid = (from + to) >>> 1;
+            ChunkTask<R> right = new ChunkTask<R>(aggregator, chunks, mid, to);
+            right.fork();
+            R left = new ChunkTask<R>(aggregator, chunks, from, mid).compute();
+            return aggregator.merge(left, right.join());
+        }
+
+        // Splits lines like LineRecordReader: \n, \r\n or \r, no record for a
+        // trailing terminator
+        private void process(ByteBuffer chunk, R partial) throws IOException {
+            byte[] bytes;
+            int base;
+            byte[] scratch = null;
+            if (chunk.hasArray()) {
+                bytes = chunk.array();
+                base = chunk.arrayOffset();
+            } else {
+                bytes = null;
+                base = 0;
+                scratch = new byte[256];
+            }
+
+            int limit = chunk.limit();
+            int start = 0;
+            while (start < limit) {
+                int end = start;
+                while (end < limit && chunk.get(end) != '\n' && chunk.get(end) != '\r') {
+                    end++;
+                }
+                int len = end - start;
+                if (bytes != null) {
+                    aggregator.line(partial, bytes, base + start, len);
+                } else {
+                    if (scratch.length < len) {
+                        scratch = new byte[Math.max(len, scratch.length * 2)];
+                    }
+                    ByteBuffer line = chunk.duplicate();
+                    line.position(start);
+                    line.get(scratch, 0, len);
+                    aggregator.line(partial, scratch, 0, len);
+                }
+
+                if (end < limit && chunk.get(end) == '\r' && end + 1 < limit && chunk.get(end + 1) == '\n') {
+                    end++;
+                }
+                start = end + 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,314 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+// Bulk copy of a file or directory tree between any two Hadoop file systems
+// (local -> HDFS, HDFS -> local, HDFS -> HDFS) on a bounded thread pool.
+//
+// Files are cut into transfer.chunk.mb ranges read with positional
+// readFully, so no stream position is shared between threads. Into a local
+// destination the ranges of one file are written in parallel with
+// positional FileChannel writes; other file systems only take sequential
+// writes, so there one task writes a file range after range and parallelism
+// comes from copying several files at once. Every range gets a CRC32C while
+// it is copied; with transfer.verify (default true) the destination is read
+// back and each range compared. Throughput is reported every
+// transfer.report.seconds and at the end.
+//
+//   ParallelTransfer [-D transfer.threads=N] <source> <destination>
+public class ParallelTransfer {
+
+    public static final String THREADS = "transfer.threads";
+    public static final String CHUNK_MB = "transfer.chunk.mb";
+    public static final String BUFFER_KB = "transfer.buffer.kb";
+    public static final String VERIFY = "transfer.verify";
+    public static final String REPORT_SECONDS = "transfer.report.seconds";
+
+    // One byte range of one file
+    static class Chunk {
+        final Path source;
+        final Path target;
+        final long offset;
+        final long length;
+        long crc;
+
+        Chunk(Path source, Path target, long offset, long length) {
+            this.source = source;
+            this.target = target;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private final Configuration conf;
+    private final int threads;
+    private final long chunkSize;
+    private final int bufferSize;
+    private final AtomicLong copied = new AtomicLong();
+    private final AtomicLong verified = new AtomicLong();
+
+    public ParallelTransfer(Configuration conf) {
+        this.conf = conf;
+        threads = conf.getInt(THREADS, 8);
+        chunkSize = conf.getLong(CHUNK_MB, 64) << 20;
+        bufferSize = conf.getInt(BUFFER_KB, 4096) << 10;
+    }
+
+    public boolean copy(Path source, Path target) throws IOException, InterruptedException {
+        FileSystem srcFs = source.getFileSystem(conf);
+        FileSystem dstFs = target.getFileSystem(conf);
+        source = srcFs.makeQualified(source);
+        target = dstFs.makeQualified(target);
+        if (srcFs.getFileStatus(source).isFile() && isDirectory(dstFs, target)) {
+            target = new Path(target, source.getName());
+        }
+        boolean localTarget = "file".equals(target.toUri().getScheme());
+
+        // Source files and their ranges
+        List<List<Chunk>> files = new ArrayList<List<Chunk>>();
+        long totalBytes = 0;
+        String root = source.toUri().getPath();
+        RemoteIterator<LocatedFileStatus> it = srcFs.listFiles(source, true);
+        while (it.hasNext()) {
+            FileStatus file = it.next();
+            String relative = file.getPath().toUri().getPath().substring(root.length());
+            Path dst = relative.isEmpty() ? target : new Path(target.toString() + relative);
+            List<Chunk> chunks = new ArrayList<Chunk>();
+            long offset = 0;
+            do {
+                long length = Math.min(chunkSize, file.getLen() - offset);
+                chunks.add(new Chunk(file.getPath(), dst, offset, length));
+                offset += length;
+            } while (offset < file.getLen());
+            files.add(chunks);
+            totalBytes += file.getLen();
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ScheduledExecutorService reporter = startReporter(totalBytes);
+        long start = System.nanoTime();
+        int failed = 0;
+        try {
+            // Copy: one task per range into local files, one per file elsewhere
+            List<Future<?>> copies = new ArrayList<Future<?>>();
+            for (final List<Chunk> chunks : files) {
+                dstFs.mkdirs(chunks.get(0).target.getParent());
+                if (localTarget) {
+                    // also drops a stale .crc file the local file system would check against
+                    dstFs.delete(chunks.get(0).target, false);
+                    preallocate(chunks);
+                    for (final Chunk chunk : chunks) {
+                        copies.add(pool.submit(new Callable<Void>() {
+                            public Void call() throws IOException {
+                                copyToLocal(chunk);
+                                return null;
+                            }
+                        }));
+                    }
+                } else {
+                    copies.add(pool.submit(new Callable<Void>() {
+                        public Void call() throws IOException {
+                            copySequential(chunks);
+                            return null;
+                        }
+                    }));
+                }
+            }
+            failed += await(copies);
+            double copySeconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Copied %d files, %d bytes in %.1f s (%.1f MB/s)%n", files.size(), copied.get(),
+                    copySeconds, copied.get() / 1048576.0 / copySeconds);
+
+            if (failed == 0 && conf.getBoolean(VERIFY, true)) {
+                List<Future<?>> checks = new ArrayList<Future<?>>();
+                for (List<Chunk> chunks : files) {
+                    for (final Chunk chunk : chunks) {
+                        checks.add(pool.submit(new Callable<Void>() {
+                            public Void call() throws IOException {
+                                verify(chunk);
+                                return null;
+                            }
+                        }));
+                    }
+                }
+                long verifyStart = System.nanoTime();
+                failed += await(checks);
+                double verifySeconds = (System.nanoTime() - verifyStart) / 1e9;
+                System.out.printf("Verified %d bytes in %.1f s (%.1f MB/s)%n", verified.get(),
+                        verifySeconds, verified.get() / 1048576.0 / verifySeconds);
+            }
+        } finally {
+            reporter.shutdownNow();
+            pool.shutdownNow();
+        }
+        if (failed > 0) {
+            System.err.println(failed + " range(s) failed");
+        }
+        return failed == 0;
+    }
+
+    // Local target: size the file up front so ranges can be written in any order
+    private void preallocate(List<Chunk> chunks) throws IOException {
+        Chunk last = chunks.get(chunks.size() - 1);
+        RandomAccessFile file = new RandomAccessFile(localFile(last.target), "rw");
+        try {
+            file.setLength(last.offset + last.length);
+        } finally {
+            file.close();
+        }
+    }
+
+    private void copyToLocal(Chunk chunk) throws IOException {
+        FileSystem srcFs = chunk.source.getFileSystem(conf);
+        FSDataInputStream in = srcFs.open(chunk.source, bufferSize);
+        FileChannel out = FileChannel.open(localFile(chunk.target).toPath(), StandardOpenOption.WRITE);
+        try {
+            byte[] buffer = new byte[(int) Math.min(bufferSize, Math.max(chunk.length, 1))];
+            CRC32C crc = new CRC32C();
+            long done = 0;
+            while (done < chunk.length) {
+                int n = (int) Math.min(buffer.length, chunk.length - done);
+                in.readFully(chunk.offset + done, buffer, 0, n);
+                crc.update(buffer, 0, n);
+                ByteBuffer data = ByteBuffer.wrap(buffer, 0, n);
+                long position = chunk.offset + done;
+                while (data.hasRemaining()) {
+                    position += out.write(data, position);
+                }
+                done += n;
+                copied.addAndGet(n);
+            }
+            chunk.crc = crc.getValue();
+        } finally {
+            out.close();
+            in.close();
+        }
+    }
+
+    private void copySequential(List<Chunk> chunks) throws IOException {
+        Chunk first = chunks.get(0);
+        FileSystem srcFs = first.source.getFileSystem(conf);
+        FileSystem dstFs = first.target.getFileSystem(conf);
+        FSDataInputStream in = srcFs.open(first.source, bufferSize);
+        FSDataOutputStream out = dstFs.create(first.target, true, bufferSize);
+        try {
+            byte[] buffer = new byte[bufferSize];
+            for (Chunk chunk : chunks) {
+                CRC32C crc = new CRC32C();
+                long done = 0;
+                while (done < chunk.length) {
+                    int n = (int) Math.min(buffer.length, chunk.length - done);
+                    in.readFully(chunk.offset + done, buffer, 0, n);
+                    crc.update(buffer, 0, n);
+                    out.write(buffer, 0, n);
+                    done += n;
+                    copied.addAndGet(n);
+                }
+                chunk.crc = crc.getValue();
+            }
+        } finally {
+            out.close();
+            in.close();
+        }
+    }
+
+    private void verify(Chunk chunk) throws IOException {
+        FileSystem dstFs = chunk.target.getFileSystem(conf);
+        FSDataInputStream in = dstFs.open(chunk.target, bufferSize);
+        try {
+            byte[] buffer = new byte[(int) Math.min(bufferSize, Math.max(chunk.length, 1))];
+            CRC32C crc = new CRC32C();
+            long done = 0;
+            while (done < chunk.length) {
+                int n = (int) Math.min(buffer.length, chunk.length - done);
+                in.readFully(chunk.offset + done, buffer, 0, n);
+                crc.update(buffer, 0, n);
+                done += n;
+                verified.addAndGet(n);
+            }
+            if (crc.getValue() != chunk.crc) {
+                throw new IOException("Checksum mismatch in " + chunk.target + " at bytes "
+                        + chunk.offset + "-" + (chunk.offset + chunk.length));
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private int await(List<Future<?>> futures) throws InterruptedException {
+        int failed = 0;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                System.err.println("Transfer failed: " + e.getCause());
+                failed++;
+            }
+        }
+        return failed;
+    }
+
+    private ScheduledExecutorService startReporter(final long totalBytes) {
+        final long start = System.nanoTime();
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        int seconds = conf.getInt(REPORT_SECONDS, 5);
+        reporter.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                double elapsed = (System.nanoTime() - start) / 1e9;
+                long bytes = copied.get() + verified.get();
+                System.out.printf("  %d / %d MB copied, %d MB verified, %.1f MB/s%n", copied.get() >> 20,
+                        totalBytes >> 20, verified.get() >> 20, bytes / 1048576.0 / elapsed);
+            }
+        }, seconds, seconds, TimeUnit.SECONDS);
+        return reporter;
+    }
+
+    // false also when the target does not exist yet
+    private static boolean isDirectory(FileSystem fs, Path path) throws IOException {
+        try {
+            return fs.getFileStatus(path).isDirectory();
+        } catch (FileNotFoundException e) {
+            return false;
+        }
+    }
+
+    private static File localFile(Path path) {
+        return new File(path.toUri());
+    }
+
+    public static void main(String[] args) throws Exception {
+        Configuration conf = new Configuration();
+        String[] rest = new GenericOptionsParser(conf, args).getRemainingArgs();
+        if (rest.length < 2) {
+            System.err.println("Usage: ParallelTransfer [-D transfer.threads=N] [-D transfer.chunk.mb=M]"
+                    + " [-D transfer.verify=false] <source> <destination>");
+            System.exit(2);
+        }
+        System.exit(new ParallelTransfer(conf).copy(new Path(rest[0]), new Path(rest[1])) ? 0 : 1);
+    }
+}
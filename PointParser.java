@@ -0,0 +1,46 @@
+import org.apache.hadoop.conf.Configuration;
+
+// Parses the delimited text points used by the KMeans jobs: "x,y",
+// "name x y", "ID,math,science,english" and so on. Fields may be separated by
+// commas and/or whitespace; the first kmeans.input.id.columns fields are ids.
+// Lines that are not points (blank lines, CSV headers) parse as null.
+public class PointParser {
+
+    public static final String ID_COLUMNS = "kmeans.input.id.columns";
+
+    private final int idColumns;
+    private String id;
+
+    public PointParser(Configuration conf) {
+        this(conf.getInt(ID_COLUMNS, 0));
+    }
+
+    public PointParser(int idColumns) {
+        this.idColumns = idColumns;
+    }
+
+    public double[] parse(String line) {
+        String[] parts = line.trim().split("[,\\s]+");
+        if (parts.length <= idColumns || parts[0].isEmpty()) {
+            return null;
+        }
+        double[] point = new double[parts.length - idColumns];
+        try {
+            for (int j = 0; j < point.length; j++) {
+                point[j] = Double.parseDouble(parts[idColumns + j]);
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        id = idColumns == 0 ? "" : parts[0];
+        for (int j = 1; j < idColumns; j++) {
+            id += "," + parts[j];
+        }
+        return point;
+    }
+
+    // Id columns of the last successfully parsed line
+    public String id() {
+        return id;
+    }
+}
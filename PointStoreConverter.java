@@ -0,0 +1,74 @@
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+// One-time conversion of text points into the binary point store read by
+// PointStoreInputFormat: block-compressed SequenceFiles of (id, PointWritable),
+// i.e. the id column plus raw 8-byte doubles. The files stay splittable, and
+// jobs that read them never parse text again.
+//
+// Input lines are parsed with PointParser; use -D kmeans.input.id.columns=1
+// for "ID,math,science,english" style files. Unparseable lines are skipped
+// and counted.
+public class PointStoreConverter {
+
+    public enum Counters { POINTS, SKIPPED_LINES }
+
+    public static class ConvertMapper extends Mapper<Object, Text, Text, PointWritable> {
+        private PointParser parser;
+        private final Text id = new Text();
+        private final PointWritable point = new PointWritable();
+
+        @Override
+        protected void setup(Context context) {
+            parser = new PointParser(context.getConfiguration());
+        }
+
+        public void map(Object key, Text value, Context context)
+                throws IOException, InterruptedException {
+            double[] coords = parser.parse(value.toString());
+            if (coords == null) {
+                context.getCounter(Counters.SKIPPED_LINES).increment(1);
+                return;
+            }
+            id.set(parser.id());
+            point.set(coords);
+            context.write(id, point);
+            context.getCounter(Counters.POINTS).increment(1);
+        }
+    }
+
+    public static boolean run(Configuration conf, Path input, Path output) throws Exception {
+        Job job = Job.getInstance(conf, "point store conversion");
+        job.setJarByClass(PointStoreConverter.class);
+        job.setMapperClass(ConvertMapper.class);
+        job.setNumReduceTasks(0);
+        job.setOutputKeyClass(Text.class);
+        job.setOutputValueClass(PointWritable.class);
+        job.setOutputFormatClass(SequenceFileOutputFormat.class);
+        FileOutputFormat.setCompressOutput(job, true);
+        SequenceFileOutputFormat.setOutputCompressionType(job, SequenceFile.CompressionType.BLOCK);
+        FileInputFormat.addInputPath(job, input);
+        FileOutputFormat.setOutputPath(job, output);
+        return job.waitForCompletion(true);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Configuration conf = new Configuration();
+        String[] rest = new GenericOptionsParser(conf, args).getRemainingArgs();
+        if (rest.length < 2) {
+            System.err.println("Usage: PointStoreConverter [-D kmeans.input.id.columns=N] <text input> <point store>");
+            System.exit(2);
+        }
+        System.exit(run(conf, new Path(rest[0]), new Path(rest[1])) ? 0 : 1);
+    }
+}
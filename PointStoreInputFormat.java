@@ -0,0 +1,18 @@
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileRecordReader;
+
+// Reads the point store written by PointStoreConverter. Splits follow the
+// SequenceFile sync markers; the reader deserializes into one reused
+// PointWritable, so mappers get each point as a double[] without parsing
+// or per-record allocation.
+public class PointStoreInputFormat extends SequenceFileInputFormat<Text, PointWritable> {
+
+    @Override
+    public RecordReader<Text, PointWritable> createRecordReader(InputSplit split, TaskAttemptContext context) {
+        return new SequenceFileRecordReader<Text, PointWritable>();
+    }
+}
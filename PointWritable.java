@@ -0,0 +1,137 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+
+// A point of the KMeans jobs with an optional label (student / record id).
+// Serialized as vint dims, dims raw 8-byte doubles, then the label as a Text,
+// so nothing is converted to or from decimal strings on the way through the shuffle.
+public class PointWritable implements WritableComparable<PointWritable> {
+
+    private double[] coords = new double[0];
+    private final Text label = new Text();
+
+    public PointWritable() {
+    }
+
+    public PointWritable(double[] coords) {
+        set(coords);
+    }
+
+    public double[] get() {
+        return coords;
+    }
+
+    public int dimensions() {
+        return coords.length;
+    }
+
+    // Copies the values; the backing array is reused while the dimension stays the same
+    public void set(double[] values) {
+        if (coords.length != values.length) {
+            coords = new double[values.length];
+        }
+        System.arraycopy(values, 0, coords, 0, values.length);
+    }
+
+    public Text getLabel() {
+        return label;
+    }
+
+    public void setLabel(String value) {
+        label.set(value);
+    }
+
+    public void write(DataOutput out) throws IOException {
+        WritableUtils.writeVInt(out, coords.length);
+        for (double c : coords) {
+            out.writeDouble(c);
+        }
+        label.write(out);
+    }
+
+    public void readFields(DataInput in) throws IOException {
+        int dims = WritableUtils.readVInt(in);
+        if (coords.length != dims) {
+            coords = new double[dims];
+        }
+        for (int j = 0; j < dims; j++) {
+            coords[j] = in.readDouble();
+        }
+        label.readFields(in);
+    }
+
+    // Coordinates first (lexicographically), then dimension, then label
+    public int compareTo(PointWritable other) {
+        int n = Math.min(coords.length, other.coords.length);
+        for (int j = 0; j < n; j++) {
+            int c = Double.compare(coords[j], other.coords[j]);
+            if (c != 0) return c;
+        }
+        if (coords.length != other.coords.length) {
+            return coords.length < other.coords.length ? -1 : 1;
+        }
+        return label.compareTo(other.label);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof PointWritable)) return false;
+        PointWritable other = (PointWritable) o;
+        return Arrays.equals(coords, other.coords) && label.equals(other.label);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(coords) * 31 + label.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return CentroidFile.format(coords);
+    }
+
+    // Compares serialized points without deserializing them
+    public static class Comparator extends WritableComparator {
+
+        public Comparator() {
+            super(PointWritable.class);
+        }
+
+        @Override
+        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            try {
+                int n1 = readVInt(b1, s1);
+                int n2 = readVInt(b2, s2);
+                int o1 = s1 + WritableUtils.decodeVIntSize(b1[s1]);
+                int o2 = s2 + WritableUtils.decodeVIntSize(b2[s2]);
+
+                int n = Math.min(n1, n2);
+                for (int j = 0; j < n; j++, o1 += 8, o2 += 8) {
+                    int c = Double.compare(readDouble(b1, o1), readDouble(b2, o2));
+                    if (c != 0) return c;
+                }
+                if (n1 != n2) {
+                    return n1 < n2 ? -1 : 1;
+                }
+
+                int len1 = readVInt(b1, o1);
+                int len2 = readVInt(b2, o2);
+                o1 += WritableUtils.decodeVIntSize(b1[o1]);
+                o2 += WritableUtils.decodeVIntSize(b2[o2]);
+                return compareBytes(b1, o1, len1, b2, o2, len2);
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+    }
+
+    static {
+        WritableComparator.define(PointWritable.class, new Comparator());
+    }
+}
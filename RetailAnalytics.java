@@ -0,0 +1,290 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.LazyOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+// The retail analytics of pcmds.txt in a single scan of transactions.csv
+// (txn_id,date,customer_id,product_id,category,quantity,price):
+//
+//   <output>/category_sales/      category,SUM(quantity * price)
+//   <output>/txn_per_category/    category,COUNT(*)
+//   <output>/avg_per_customer/    customer_id,AVG(quantity * price)
+//   <output>/total_per_customer/  customer_id,SUM(quantity * price)
+//
+// Every valid transaction (txn_id > 0) is emitted once under its category and
+// once under its customer as a (sum, count) pair, so the combiner can merge
+// both aggregates and AVG stays combinable.
+public class RetailAnalytics {
+
+    public enum Counters { TRANSACTIONS, FILTERED, MALFORMED }
+
+    public static final String CATEGORY_SALES = "categorysales";
+    public static final String CATEGORY_COUNT = "categorycount";
+    public static final String CUSTOMER_AVG = "customeravg";
+    public static final String CUSTOMER_TOTAL = "customertotal";
+
+    // ---------------- Composite key: category or customer ----------------
+    public static class RetailKey implements WritableComparable<RetailKey> {
+        public static final byte CATEGORY = 0;
+        public static final byte CUSTOMER = 1;
+
+        private byte kind;
+        private final Text category = new Text();
+        private long customer;
+
+        public void setCategory(byte[] bytes, int start, int len) {
+            kind = CATEGORY;
+            category.set(bytes, start, len);
+        }
+
+        public void setCustomer(long id) {
+            kind = CUSTOMER;
+            customer = id;
+        }
+
+        public byte getKind() {
+            return kind;
+        }
+
+        public Text getCategory() {
+            return category;
+        }
+
+        public long getCustomer() {
+            return customer;
+        }
+
+        public void write(DataOutput out) throws IOException {
+            out.writeByte(kind);
+            if (kind == CATEGORY) {
+                category.write(out);
+            } else {
+                WritableUtils.writeVLong(out, customer);
+            }
+        }
+
+        public void readFields(DataInput in) throws IOException {
+            kind = in.readByte();
+            if (kind == CATEGORY) {
+                category.readFields(in);
+            } else {
+                customer = WritableUtils.readVLong(in);
+            }
+        }
+
+        public int compareTo(RetailKey other) {
+            if (kind != other.kind) {
+                return kind < other.kind ? -1 : 1;
+            }
+            return kind == CATEGORY ? category.compareTo(other.category) : Long.compare(customer, other.customer);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof RetailKey && compareTo((RetailKey) o) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return kind == CATEGORY ? category.hashCode() : Long.hashCode(customer) * 31 + 1;
+        }
+
+        public static class Comparator extends WritableComparator {
+            public Comparator() {
+                super(RetailKey.class);
+            }
+
+            @Override
+            public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+                if (b1[s1] != b2[s2]) {
+                    return b1[s1] < b2[s2] ? -1 : 1;
+                }
+                try {
+                    if (b1[s1] == CATEGORY) {
+                        int n1 = WritableUtils.decodeVIntSize(b1[s1 + 1]);
+                        int n2 = WritableUtils.decodeVIntSize(b2[s2 + 1]);
+                        return compareBytes(b1, s1 + 1 + n1, readVInt(b1, s1 + 1),
+                                b2, s2 + 1 + n2, readVInt(b2, s2 + 1));
+                    }
+                    return Long.compare(readVLong(b1, s1 + 1), readVLong(b2, s2 + 1));
+                } catch (IOException e) {
+                    throw new IllegalArgumentException(e);
+                }
+            }
+        }
+
+        static {
+            WritableComparator.define(RetailKey.class, new Comparator());
+        }
+    }
+
+    // ---------------- Partial aggregate: (sum, count) ----------------
+    public static class SumCountWritable implements Writable {
+        private long sum;
+        private long count;
+
+        public void set(long sum, long count) {
+            this.sum = sum;
+            this.count = count;
+        }
+
+        public long getSum() {
+            return sum;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public void write(DataOutput out) throws IOException {
+            WritableUtils.writeVLong(out, sum);
+            WritableUtils.writeVLong(out, count);
+        }
+
+        public void readFields(DataInput in) throws IOException {
+            sum = WritableUtils.readVLong(in);
+            count = WritableUtils.readVLong(in);
+        }
+    }
+
+    // ---------------- Mapper ----------------
+    public static class TxnMapper extends Mapper<Object, Text, RetailKey, SumCountWritable> {
+        private final RetailKey key = new RetailKey();
+        private final SumCountWritable sale = new SumCountWritable();
+        private final Text category = new Text();
+
+        public void map(Object offset, Text value, Context context)
+                throws IOException, InterruptedException {
+            String[] f = value.toString().split(",");
+            long txnId, customer, quantity, price;
+            try {
+                txnId = Long.parseLong(f[0].trim());
+                customer = Long.parseLong(f[2].trim());
+                quantity = Long.parseLong(f[5].trim());
+                price = Long.parseLong(f[6].trim());
+            } catch (RuntimeException e) {
+                // header line, short line or non-numeric field
+                context.getCounter(Counters.MALFORMED).increment(1);
+                return;
+            }
+            if (txnId <= 0) {
+                context.getCounter(Counters.FILTERED).increment(1);
+                return;
+            }
+            context.getCounter(Counters.TRANSACTIONS).increment(1);
+
+            sale.set(quantity * price, 1);
+            category.set(f[4].trim());
+            key.setCategory(category.getBytes(), 0, category.getLength());
+            context.write(key, sale);
+            key.setCustomer(customer);
+            context.write(key, sale);
+        }
+    }
+
+    // ---------------- Combiner ----------------
+    public static class SumCountCombiner extends Reducer<RetailKey, SumCountWritable, RetailKey, SumCountWritable> {
+        private final SumCountWritable total = new SumCountWritable();
+
+        public void reduce(RetailKey key, Iterable<SumCountWritable> values, Context context)
+                throws IOException, InterruptedException {
+            long sum = 0, count = 0;
+            for (SumCountWritable val : values) {
+                sum += val.getSum();
+                count += val.getCount();
+            }
+            total.set(sum, count);
+            context.write(key, total);
+        }
+    }
+
+    // ---------------- Reducer ----------------
+    public static class AnalyticsReducer extends Reducer<RetailKey, SumCountWritable, Text, LongWritable> {
+        private MultipleOutputs<Text, LongWritable> outputs;
+        private final LongWritable number = new LongWritable();
+        private final LongWritable customer = new LongWritable();
+        private final DoubleWritable average = new DoubleWritable();
+
+        @Override
+        protected void setup(Context context) {
+            outputs = new MultipleOutputs<Text, LongWritable>(context);
+        }
+
+        public void reduce(RetailKey key, Iterable<SumCountWritable> values, Context context)
+                throws IOException, InterruptedException {
+            long sum = 0, count = 0;
+            for (SumCountWritable val : values) {
+                sum += val.getSum();
+                count += val.getCount();
+            }
+
+            if (key.getKind() == RetailKey.CATEGORY) {
+                number.set(sum);
+                outputs.write(CATEGORY_SALES, key.getCategory(), number, "category_sales/part");
+                number.set(count);
+                outputs.write(CATEGORY_COUNT, key.getCategory(), number, "txn_per_category/part");
+            } else {
+                customer.set(key.getCustomer());
+                number.set(sum);
+                outputs.write(CUSTOMER_TOTAL, customer, number, "total_per_customer/part");
+                average.set((double) sum / count);
+                outputs.write(CUSTOMER_AVG, customer, average, "avg_per_customer/part");
+            }
+        }
+
+        @Override
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            outputs.close();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Configuration conf = new Configuration();
+        String[] rest = new GenericOptionsParser(conf, args).getRemainingArgs();
+        if (rest.length < 2) {
+            System.err.println("Usage: RetailAnalytics <transactions input> <output>");
+            System.exit(2);
+        }
+        // PigStorage(',') layout
+        conf.set(TextOutputFormat.SEPARATOR, ",");
+
+        Job job = Job.getInstance(conf, "retail analytics");
+        job.setJarByClass(RetailAnalytics.class);
+        job.setMapperClass(TxnMapper.class);
+        job.setCombinerClass(SumCountCombiner.class);
+        job.setReducerClass(AnalyticsReducer.class);
+        job.setMapOutputKeyClass(RetailKey.class);
+        job.setMapOutputValueClass(SumCountWritable.class);
+        job.setOutputKeyClass(Text.class);
+        job.setOutputValueClass(LongWritable.class);
+
+        MultipleOutputs.addNamedOutput(job, CATEGORY_SALES, TextOutputFormat.class, Text.class, LongWritable.class);
+        MultipleOutputs.addNamedOutput(job, CATEGORY_COUNT, TextOutputFormat.class, Text.class, LongWritable.class);
+        MultipleOutputs.addNamedOutput(job, CUSTOMER_TOTAL, TextOutputFormat.class, LongWritable.class, LongWritable.class);
+        MultipleOutputs.addNamedOutput(job, CUSTOMER_AVG, TextOutputFormat.class, LongWritable.class, DoubleWritable.class);
+        // only the named outputs are written; don't create empty part-r files
+        LazyOutputFormat.setOutputFormatClass(job, TextOutputFormat.class);
+
+        FileInputFormat.addInputPath(job, new Path(rest[0]));
+        FileOutputFormat.setOutputPath(job, new Path(rest[1]));
+        System.exit(job.waitForCompletion(true) ? 0 : 1);
+    }
+}
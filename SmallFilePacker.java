@@ -0,0 +1,256 @@
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+// Packs a directory of small files into a few large container files, so the
+// NameNode tracks a handful of objects instead of one (or more) per file.
+//
+// Archive layout:
+//   data-00000, data-00001, ...  the file contents back to back, each container
+//                                written as a single block of packer.container.mb
+//   index/                       MapFile: relative name -> (container, offset, length)
+//
+// A lookup is one binary search in the MapFile index plus one positional
+// read of the container. Scans over the containers are plain sequential
+// reads of large files.
+//
+//   SmallFilePacker pack [-delete] <source dir> <archive dir>
+//   SmallFilePacker get <archive dir> <name> [local file]
+//   SmallFilePacker ls <archive dir>
+public class SmallFilePacker {
+
+    // Target container size, default the file system's block size
+    public static final String CONTAINER_MB = "packer.container.mb";
+
+    private static final String INDEX = "index";
+
+    // Where one packed file lives
+    public static class Location implements Writable {
+        private int container;
+        private long offset;
+        private long length;
+
+        public Location() {
+        }
+
+        public Location(int container, long offset, long length) {
+            this.container = container;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public int getContainer() {
+            return container;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public void write(DataOutput out) throws IOException {
+            WritableUtils.writeVInt(out, container);
+            WritableUtils.writeVLong(out, offset);
+            WritableUtils.writeVLong(out, length);
+        }
+
+        public void readFields(DataInput in) throws IOException {
+            container = WritableUtils.readVInt(in);
+            offset = WritableUtils.readVLong(in);
+            length = WritableUtils.readVLong(in);
+        }
+
+        @Override
+        public String toString() {
+            return containerName(container) + "\t" + offset + "\t" + length;
+        }
+    }
+
+    // Random access to a packed archive; keeps container streams open
+    public static class Reader implements Closeable {
+        private final FileSystem fs;
+        private final Path archive;
+        private final MapFile.Reader index;
+        private final Map<Integer, FSDataInputStream> containers = new HashMap<Integer, FSDataInputStream>();
+        private final Location location = new Location();
+
+        public Reader(Configuration conf, Path archive) throws IOException {
+            this.fs = archive.getFileSystem(conf);
+            this.archive = archive;
+            index = new MapFile.Reader(new Path(archive, INDEX), conf);
+        }
+
+        // Contents of a packed file, or null if the archive does not have it
+        public byte[] get(String name) throws IOException {
+            if (index.get(new Text(name), location) == null) {
+                return null;
+            }
+            if (location.getLength() > Integer.MAX_VALUE) {
+                throw new IOException(name + " is too large to read into memory: " + location.getLength());
+            }
+            FSDataInputStream in = containers.get(location.getContainer());
+            if (in == null) {
+                in = fs.open(new Path(archive, containerName(location.getContainer())));
+                containers.put(location.getContainer(), in);
+            }
+            byte[] bytes = new byte[(int) location.getLength()];
+            in.readFully(location.getOffset(), bytes);
+            return bytes;
+        }
+
+        public void close() throws IOException {
+            for (FSDataInputStream in : containers.values()) {
+                in.close();
+            }
+            index.close();
+        }
+    }
+
+    public static void pack(Configuration conf, Path source, Path archive, boolean deleteSource) throws IOException {
+        FileSystem in = source.getFileSystem(conf);
+        FileSystem out = archive.getFileSystem(conf);
+        if (out.exists(archive)) {
+            throw new IOException("Archive " + archive + " already exists");
+        }
+        long target = conf.getLong(CONTAINER_MB, Math.max(1, out.getDefaultBlockSize(archive) >> 20)) << 20;
+        if (target <= 0) {
+            throw new IOException(CONTAINER_MB + " must be at least 1");
+        }
+
+        // MapFile keys must be appended in sorted order: Text byte order of
+        // the relative names, which is not the order of the (escaped) Paths
+        String root = in.makeQualified(source).toUri().getPath();
+        TreeMap<Text, FileStatus> files = new TreeMap<Text, FileStatus>();
+        RemoteIterator<LocatedFileStatus> it = in.listFiles(source, true);
+        while (it.hasNext()) {
+            LocatedFileStatus file = it.next();
+            String name = file.getPath().toUri().getPath().substring(root.length());
+            if (name.startsWith("/")) {
+                name = name.substring(1);
+            }
+            files.put(new Text(name), file);
+        }
+
+        MapFile.Writer index = new MapFile.Writer(conf, new Path(archive, INDEX),
+                MapFile.Writer.keyClass(Text.class), SequenceFile.Writer.valueClass(Location.class));
+        int container = -1;
+        FSDataOutputStream data = null;
+        long packedBytes = 0;
+        try {
+            for (Map.Entry<Text, FileStatus> entry : files.entrySet()) {
+                FileStatus file = entry.getValue();
+                if (data == null || (data.getPos() > 0 && data.getPos() + file.getLen() > target)) {
+                    if (data != null) {
+                        data.close();
+                    }
+                    container++;
+                    data = createContainer(out, new Path(archive, containerName(container)),
+                            Math.max(target, file.getLen()));
+                }
+                long offset = data.getPos();
+                InputStream content = in.open(file.getPath());
+                try {
+                    IOUtils.copyBytes(content, data, 1 << 16, false);
+                } finally {
+                    content.close();
+                }
+                index.append(entry.getKey(), new Location(container, offset, data.getPos() - offset));
+                packedBytes += file.getLen();
+            }
+        } finally {
+            if (data != null) {
+                data.close();
+            }
+            index.close();
+        }
+        System.out.println("Packed " + files.size() + " files (" + packedBytes + " bytes) into "
+                + (container + 1) + " container(s) in " + archive);
+
+        if (deleteSource) {
+            for (FileStatus file : files.values()) {
+                in.delete(file.getPath(), false);
+            }
+        }
+    }
+
+    // One block per container: the block size is the target size rounded up to whole MB, at least 1 MB
+    private static FSDataOutputStream createContainer(FileSystem fs, Path path, long size) throws IOException {
+        long blockSize = Math.max(1, (size + (1 << 20) - 1) >> 20) << 20;
+        return fs.create(path, false, 1 << 16, fs.getDefaultReplication(path), blockSize);
+    }
+
+    static String containerName(int container) {
+        return String.format("data-%05d", container);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Configuration conf = new Configuration();
+        String[] rest = new GenericOptionsParser(conf, args).getRemainingArgs();
+        String command = rest.length > 0 ? rest[0] : "";
+
+        if (command.equals("pack") && rest.length >= 3) {
+            boolean delete = rest[1].equals("-delete");
+            int first = delete ? 2 : 1;
+            pack(conf, new Path(rest[first]), new Path(rest[first + 1]), delete);
+        } else if (command.equals("get") && rest.length >= 3) {
+            Reader reader = new Reader(conf, new Path(rest[1]));
+            try {
+                byte[] bytes = reader.get(rest[2]);
+                if (bytes == null) {
+                    System.err.println("No such file in archive: " + rest[2]);
+                    System.exit(1);
+                }
+                OutputStream out = rest.length > 3 ? new FileOutputStream(rest[3]) : System.out;
+                out.write(bytes);
+                out.flush();
+                if (out != System.out) {
+                    out.close();
+                }
+            } finally {
+                reader.close();
+            }
+        } else if (command.equals("ls") && rest.length >= 2) {
+            MapFile.Reader index = new MapFile.Reader(new Path(rest[1], INDEX), conf);
+            try {
+                Text name = new Text();
+                Location location = new Location();
+                while (index.next(name, location)) {
+                    System.out.println(name + "\t" + location);
+                }
+            } finally {
+                index.close();
+            }
+        } else {
+            System.err.println("Usage: SmallFilePacker pack [-delete] <source dir> <archive dir>");
+            System.err.println("       SmallFilePacker get <archive dir> <name> [local file]");
+            System.err.println("       SmallFilePacker ls <archive dir>");
+            System.exit(2);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+// Space-Saving heavy hitters with a fixed number of counters. When all
+// counters are taken, a new item replaces the smallest one and inherits its
+// count as error, so count - error <= true count <= count for every monitored
+// item, and every item more frequent than total / capacity is monitored.
+// Counters sit in a min-heap (by count) for O(log capacity) updates.
+//
+// merge() follows the mergeable-summaries construction: an item missing from
+// one side is charged that side's minimum count, then the largest counters
+// are kept.
+public class SpaceSaving implements Writable {
+
+    public static class Counter {
+        private final Text item;
+        private long count;
+        private long error;
+        private int heapIndex;
+
+        Counter(Text item, long count, long error) {
+            this.item = item;
+            this.count = count;
+            this.error = error;
+        }
+
+        public Text getItem() {
+            return item;
+        }
+
+        // Upper bound of the true count
+        public long getCount() {
+            return count;
+        }
+
+        // count - error is a lower bound of the true count
+        public long getError() {
+            return error;
+        }
+    }
+
+    private static final Comparator<Counter> DESCENDING = new Comparator<Counter>() {
+        public int compare(Counter a, Counter b) {
+            if (a.count != b.count) {
+                return a.count > b.count ? -1 : 1;
+            }
+            return a.item.compareTo(b.item);
+        }
+    };
+
+    private int capacity;
+    private Counter[] heap = new Counter[0];
+    private int size;
+    private final Map<Text, Counter> counters = new HashMap<Text, Counter>();
+
+    public SpaceSaving() {
+    }
+
+    public SpaceSaving(int capacity) {
+        this.capacity = capacity;
+        heap = new Counter[capacity];
+    }
+
+    // item may be reused by the caller afterwards
+    public void offer(Text item, long increment) {
+        Counter c = counters.get(item);
+        if (c != null) {
+            c.count += increment;
+            siftDown(c.heapIndex);
+        } else if (size < capacity) {
+            c = new Counter(new Text(item), increment, 0);
+            counters.put(c.item, c);
+            c.heapIndex = size;
+            heap[size++] = c;
+            siftUp(c.heapIndex);
+        } else {
+            // evict the minimum; its count becomes the newcomer's error
+            Counter min = heap[0];
+            counters.remove(min.item);
+            min.item.set(item);
+            min.error = min.count;
+            min.count += increment;
+            counters.put(min.item, min);
+            siftDown(0);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Smallest monitored count once all counters are taken, else 0
+    public long minCount() {
+        return size < capacity ? 0 : heap[0].count;
+    }
+
+    // The k largest counters, largest first
+    public List<Counter> top(int k) {
+        List<Counter> all = new ArrayList<Counter>(Arrays.asList(heap).subList(0, size));
+        Collections.sort(all, DESCENDING);
+        return all.subList(0, Math.min(k, all.size()));
+    }
+
+    public void merge(SpaceSaving other) {
+        long minThis = minCount();
+        long minOther = other.minCount();
+        List<Counter> merged = new ArrayList<Counter>(size + other.size);
+        for (int i = 0; i < size; i++) {
+            Counter c = heap[i];
+            Counter o = other.counters.get(c.item);
+            merged.add(o == null
+                    ? new Counter(c.item, c.count + minOther, c.error + minOther)
+                    : new Counter(c.item, c.count + o.count, c.error + o.error));
+        }
+        for (int i = 0; i < other.size; i++) {
+            Counter o = other.heap[i];
+            if (!counters.containsKey(o.item)) {
+                merged.add(new Counter(new Text(o.item), o.count + minThis, o.error + minThis));
+            }
+        }
+        Collections.sort(merged, DESCENDING);
+        rebuild(merged.subList(0, Math.min(capacity, merged.size())));
+    }
+
+    private void rebuild(List<Counter> kept) {
+        Counter[] keep = kept.toArray(new Counter[kept.size()]);
+        counters.clear();
+        size = 0;
+        Arrays.fill(heap, null);
+        for (Counter c : keep) {
+            counters.put(c.item, c);
+            c.heapIndex = size;
+            heap[size++] = c;
+            siftUp(c.heapIndex);
+        }
+    }
+
+    private void siftUp(int i) {
+        Counter c = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent].count <= c.count) break;
+            place(heap[parent], i);
+            i = parent;
+        }
+        place(c, i);
+    }
+
+    private void siftDown(int i) {
+        Counter c = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) break;
+            if (child + 1 < size && heap[child + 1].count < heap[child].count) child++;
+            if (heap[child].count >= c.count) break;
+            place(heap[child], i);
+            i = child;
+        }
+        place(c, i);
+    }
+
+    private void place(Counter c, int i) {
+        heap[i] = c;
+        c.heapIndex = i;
+    }
+
+    public void write(DataOutput out) throws IOException {
+        WritableUtils.writeVInt(out, capacity);
+        WritableUtils.writeVInt(out, size);
+        for (int i = 0; i < size; i++) {
+            heap[i].item.write(out);
+            WritableUtils.writeVLong(out, heap[i].count);
+            WritableUtils.writeVLong(out, heap[i].error);
+        }
+    }
+
+    public void readFields(DataInput in) throws IOException {
+        capacity = WritableUtils.readVInt(in);
+        if (heap.length != capacity) {
+            heap = new Counter[capacity];
+        }
+        int n = WritableUtils.readVInt(in);
+        List<Counter> read = new ArrayList<Counter>(n);
+        for (int i = 0; i < n; i++) {
+            Text item = new Text();
+            item.readFields(in);
+            read.add(new Counter(item, WritableUtils.readVLong(in), WritableUtils.readVLong(in)));
+        }
+        rebuild(read);
+    }
+}
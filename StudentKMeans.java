@@ -3,64 +3,99 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Counter;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
 
 public class StudentKMeans {
 
-    public static class KMapper extends Mapper<Object, Text, IntWritable, Text> {
+    // Named output holding one "student<TAB>cluster" line per input record
+    public static final String MEMBERS = "members";
 
-        private double[][] centroids = { {30.0, 30.0}, {80.0, 85.0} };
+    // Sums scores per cluster in the mapper and ships one ClusterSumWritable
+    // per cluster per task. Membership is written straight from the
+    // map side, so student names never go through the shuffle. Lines that are
+    // not "name score1 score2" are counted as MALFORMED_RECORDS and skipped.
+    public static class KMapper extends Mapper<Object, Text, IntWritable, ClusterSumWritable> {
+
+        private CentroidIndex centroids = new CentroidIndex(new double[][] { {30.0, 30.0}, {80.0, 85.0} });
+        private ClusterSumWritable[] partials = { new ClusterSumWritable(2), new ClusterSumWritable(2) };
+        private final double[] point = new double[2];
+
+        private MultipleOutputs<IntWritable, ClusterSumWritable> members;
+        private final Text student = new Text();
+        private final IntWritable cluster = new IntWritable();
+
+        private Counter records;
+        private Counter malformed;
+        private JobMetrics.Timer timer;
+
+        @Override
+        protected void setup(Context context) {
+            members = new MultipleOutputs<IntWritable, ClusterSumWritable>(context);
+            records = context.getCounter(JobMetrics.Counters.RECORDS_IN);
+            malformed = context.getCounter(JobMetrics.Counters.MALFORMED_RECORDS);
+            timer = new JobMetrics.Timer(context.getConfiguration(), "map");
+        }
 
         public void map(Object key, Text value, Context context)
                 throws IOException, InterruptedException {
 
+            long start = timer.start();
             String[] parts = value.toString().split("\\s+");
-            String student = parts[0];
-            double score1 = Double.parseDouble(parts[1]);
-            double score2 = Double.parseDouble(parts[2]);
-
-            int nearest = 0;
-            double minDist = Double.MAX_VALUE;
-
-            for (int i = 0; i < centroids.length; i++) {
-                double dx = score1 - centroids[i][0];
-                double dy = score2 - centroids[i][1];
-                double dist = dx * dx + dy * dy;
-                if (dist < minDist) {
-                    minDist = dist;
-                    nearest = i;
+            try {
+                if (parts.length < 3) {
+                    throw new NumberFormatException("expected name score1 score2");
                 }
+                point[0] = Double.parseDouble(parts[1]);
+                point[1] = Double.parseDouble(parts[2]);
+            } catch (NumberFormatException e) {
+                malformed.increment(1);
+                return;
             }
 
-            context.write(new IntWritable(nearest), new Text(student + "," + score1 + "," + score2));
+            int nearest = centroids.nearest(point);
+            partials[nearest].add(point);
+
+            student.set(parts[0]);
+            cluster.set(nearest);
+            members.write(MEMBERS, student, cluster);
+            records.increment(1);
+            timer.stop(start);
+        }
+
+        @Override
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            for (int i = 0; i < partials.length; i++) {
+                if (partials[i].getCount() > 0) {
+                    context.write(new IntWritable(i), partials[i]);
+                }
+            }
+            members.close();
+            context.getCounter(JobMetrics.Counters.DISTANCE_COMPUTATIONS).increment(centroids.distanceComputations());
+            timer.publish(context);
         }
     }
 
-    public static class KReducer extends Reducer<IntWritable, Text, IntWritable, Text> {
+    public static class KReducer extends Reducer<IntWritable, ClusterSumWritable, IntWritable, Text> {
 
-        public void reduce(IntWritable key, Iterable<Text> values, Context context)
+        public void reduce(IntWritable key, Iterable<ClusterSumWritable> values, Context context)
                 throws IOException, InterruptedException {
 
-            double sumX = 0, sumY = 0;
-            int count = 0;
-            StringBuilder students = new StringBuilder();
-
-            for (Text val : values) {
-                String[] parts = val.toString().split(",");
-                students.append(parts[0]).append(" ");
-                sumX += Double.parseDouble(parts[1]);
-                sumY += Double.parseDouble(parts[2]);
-                count++;
+            ClusterSumWritable total = new ClusterSumWritable();
+            for (ClusterSumWritable val : values) {
+                total.merge(val);
             }
 
-            double newX = sumX / count;
-            double newY = sumY / count;
-
-            context.write(key, new Text("Centroid=(" + newX + "," + newY + ") Students=" + students.toString()));
+            double[] centroid = total.centroid();
+            context.write(key, new Text("Centroid=(" + centroid[0] + "," + centroid[1] + ") Students="
+                    + total.getCount()));
+            context.getCounter(JobMetrics.Counters.RECORDS_OUT).increment(1);
         }
     }
 
@@ -70,10 +105,17 @@ public class StudentKMeans {
         job.setJarByClass(StudentKMeans.class);
         job.setMapperClass(KMapper.class);
         job.setReducerClass(KReducer.class);
+        job.setMapOutputValueClass(ClusterSumWritable.class);
         job.setOutputKeyClass(IntWritable.class);
         job.setOutputValueClass(Text.class);
+        MultipleOutputs.addNamedOutput(job, MEMBERS, TextOutputFormat.class, Text.class, IntWritable.class);
         FileInputFormat.addInputPath(job, new Path(args[0]));
         FileOutputFormat.setOutputPath(job, new Path(args[1]));
-        System.exit(job.waitForCompletion(true) ? 0 : 1);
+
+        long start = System.currentTimeMillis();
+        boolean ok = job.waitForCompletion(true);
+        JobMetrics.report(job, System.currentTimeMillis() - start)
+                .write(conf, new Path(args[1], JobMetrics.REPORT_FILE));
+        System.exit(ok ? 0 : 1);
     }
 }
@@ -0,0 +1,156 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.KeyValueLineRecordReader;
+import org.apache.hadoop.mapreduce.lib.input.KeyValueTextInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+// ORDER category_sales BY total_sales DESC; LIMIT n from pcmds.txt, over
+// RetailAnalytics' category_sales output ("category,total" lines).
+//
+// Each mapper keeps only its n largest totals in a bounded min-heap and emits
+// them in cleanup, so at most n records per map task reach the single
+// reducer, which merges them the same way. Nothing is fully sorted.
+public class TopCategories {
+
+    public static final String TOP_N = "topcategories.n";
+
+    static class Entry {
+        final String category;
+        final long total;
+
+        Entry(String category, long total) {
+            this.category = category;
+            this.total = total;
+        }
+    }
+
+    // Smallest total first, ties broken by name so the result is deterministic
+    static final Comparator<Entry> ASCENDING = new Comparator<Entry>() {
+        public int compare(Entry a, Entry b) {
+            if (a.total != b.total) {
+                return a.total < b.total ? -1 : 1;
+            }
+            return b.category.compareTo(a.category);
+        }
+    };
+
+    // Min-heap holding the n largest entries offered so far
+    static class TopN {
+        private final int n;
+        private final PriorityQueue<Entry> heap;
+
+        TopN(int n) {
+            this.n = n;
+            this.heap = new PriorityQueue<Entry>(n + 1, ASCENDING);
+        }
+
+        void offer(String category, long total) {
+            if (heap.size() == n) {
+                Entry smallest = heap.peek();
+                if (total < smallest.total
+                        || (total == smallest.total && category.compareTo(smallest.category) > 0)) {
+                    return;
+                }
+            }
+            heap.add(new Entry(category, total));
+            if (heap.size() > n) {
+                heap.poll();
+            }
+        }
+
+        // Largest first
+        List<Entry> descending() {
+            List<Entry> entries = new ArrayList<Entry>(heap);
+            Collections.sort(entries, Collections.reverseOrder(ASCENDING));
+            return entries;
+        }
+    }
+
+    public static class TopMapper extends Mapper<Text, Text, Text, LongWritable> {
+        private TopN top;
+
+        @Override
+        protected void setup(Context context) {
+            top = new TopN(context.getConfiguration().getInt(TOP_N, 1));
+        }
+
+        public void map(Text category, Text total, Context context) {
+            try {
+                top.offer(category.toString(), Long.parseLong(total.toString().trim()));
+            } catch (NumberFormatException e) {
+                // header or malformed line
+            }
+        }
+
+        @Override
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            for (Entry e : top.descending()) {
+                context.write(new Text(e.category), new LongWritable(e.total));
+            }
+        }
+    }
+
+    public static class TopReducer extends Reducer<Text, LongWritable, Text, LongWritable> {
+        private TopN top;
+
+        @Override
+        protected void setup(Context context) {
+            top = new TopN(context.getConfiguration().getInt(TOP_N, 1));
+        }
+
+        public void reduce(Text category, Iterable<LongWritable> totals, Context context) {
+            for (LongWritable total : totals) {
+                top.offer(category.toString(), total.get());
+            }
+        }
+
+        @Override
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            for (Entry e : top.descending()) {
+                context.write(new Text(e.category), new LongWritable(e.total));
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Configuration conf = new Configuration();
+        String[] rest = new GenericOptionsParser(conf, args).getRemainingArgs();
+        if (rest.length < 2) {
+            System.err.println("Usage: TopCategories [-D topcategories.n=N] <category_sales> <output>");
+            System.exit(2);
+        }
+        if (conf.getInt(TOP_N, 1) < 1) {
+            System.err.println(TOP_N + " must be at least 1");
+            System.exit(2);
+        }
+        conf.set(KeyValueLineRecordReader.KEY_VALUE_SEPARATOR, ",");
+        conf.set(TextOutputFormat.SEPARATOR, ",");
+
+        Job job = Job.getInstance(conf, "top categories");
+        job.setJarByClass(TopCategories.class);
+        job.setInputFormatClass(KeyValueTextInputFormat.class);
+        job.setMapperClass(TopMapper.class);
+        job.setReducerClass(TopReducer.class);
+        job.setNumReduceTasks(1);
+        job.setOutputKeyClass(Text.class);
+        job.setOutputValueClass(LongWritable.class);
+        FileInputFormat.addInputPath(job, new Path(rest[0]));
+        FileOutputFormat.setOutputPath(job, new Path(rest[1]));
+        System.exit(job.waitForCompletion(true) ? 0 : 1);
+    }
+}
@@ -0,0 +1,416 @@
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.GlobPattern;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.util.GenericOptionsParser;
+import org.apache.hadoop.util.StringUtils;
+
+// Recursive walk of a directory tree on a bounded thread pool, for the
+// things morecommands.txt does with `fs -ls -R`, `fs -du` and
+// `ls | grep | xargs fs -rm`: one client process instead of one per file.
+//
+// Every directory is listed by its own task with the paged
+// listStatusIterator, so huge directories are never held in one array and
+// sibling directories are listed concurrently. Size and count rollups are
+// summed bottom-up in the same pass: a directory's totals are final once its
+// own listing and all of its sub-directories are done. Files matching the
+// -name glob and -older / -before predicates are handed to the action (list,
+// delete or move) in batches of walker.batch, again on the pool, so a single
+// flat directory of a million logs is still deleted in parallel.
+//
+//   TreeWalker du [-depth N] <dir>
+//   TreeWalker ls [predicates] <dir>
+//   TreeWalker rm [-dryrun] [predicates] <dir>
+//   TreeWalker mv [-dryrun] [predicates] <dir> <target dir>
+//
+// predicates: -name <glob> (file name, or path below <dir> if it has a '/')
+//             -older <days> | -before <yyyy-MM-dd> (modification time)
+public class TreeWalker {
+
+    public static final String THREADS = "walker.threads";
+    public static final String BATCH = "walker.batch";
+    public static final String REPORT_SECONDS = "walker.report.seconds";
+
+    // What to do with a matching file; relative is its path below the root
+    public interface FileAction {
+        boolean apply(FileSystem fs, FileStatus file, String relative) throws IOException;
+    }
+
+    public static final FileAction PRINT = new FileAction() {
+        public boolean apply(FileSystem fs, FileStatus file, String relative) {
+            System.out.println(file.getLen() + "\t" + format(file.getModificationTime()) + "\t" + file.getPath());
+            return true;
+        }
+    };
+
+    public static final FileAction DELETE = new FileAction() {
+        public boolean apply(FileSystem fs, FileStatus file, String relative) throws IOException {
+            return fs.delete(file.getPath(), false);
+        }
+    };
+
+    // Keeps the layout below the root; each target directory is created once
+    public static FileAction moveTo(final Path target) {
+        final Set<Path> created = ConcurrentHashMap.newKeySet();
+        return new FileAction() {
+            public boolean apply(FileSystem fs, FileStatus file, String relative) throws IOException {
+                Path dst = new Path(target, relative);
+                if (created.add(dst.getParent())) {
+                    fs.mkdirs(dst.getParent());
+                }
+                return fs.rename(file.getPath(), dst);
+            }
+        };
+    }
+
+    // Totals of one directory and everything below it
+    public static class Summary {
+        private final Path path;
+        private final int depth;
+        private final Summary parent;
+        // the directory's own listing plus one per running sub-directory or batch
+        private final AtomicInteger pending = new AtomicInteger(1);
+        private final AtomicLong files = new AtomicLong();
+        private final AtomicLong dirs = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong matched = new AtomicLong();
+        private final AtomicLong matchedBytes = new AtomicLong();
+        private final AtomicLong applied = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+
+        Summary(Path path, int depth, Summary parent) {
+            this.path = path;
+            this.depth = depth;
+            this.parent = parent;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public long getFiles() {
+            return files.get();
+        }
+
+        public long getDirs() {
+            return dirs.get();
+        }
+
+        public long getBytes() {
+            return bytes.get();
+        }
+
+        public long getMatched() {
+            return matched.get();
+        }
+
+        public long getMatchedBytes() {
+            return matchedBytes.get();
+        }
+
+        public long getApplied() {
+            return applied.get();
+        }
+
+        public long getFailed() {
+            return failed.get();
+        }
+
+        void addTo(Summary other) {
+            other.files.addAndGet(files.get());
+            other.dirs.addAndGet(dirs.get());
+            other.bytes.addAndGet(bytes.get());
+            other.matched.addAndGet(matched.get());
+            other.matchedBytes.addAndGet(matchedBytes.get());
+            other.applied.addAndGet(applied.get());
+            other.failed.addAndGet(failed.get());
+        }
+    }
+
+    private final Configuration conf;
+    private final int threads;
+    private final int batchSize;
+    private GlobPattern name;
+    private boolean nameIsPath;
+    private long modifiedBefore = Long.MAX_VALUE;
+    private FileAction action;
+    private int rollupDepth = -1;
+
+    private FileSystem fs;
+    private ExecutorService pool;
+    private String rootPath;
+    private CountDownLatch done;
+    private final AtomicLong scannedDirs = new AtomicLong();
+    private final AtomicLong scannedFiles = new AtomicLong();
+    private final AtomicLong listErrors = new AtomicLong();
+    private final Map<String, Summary> rollups = new ConcurrentSkipListMap<String, Summary>();
+
+    public TreeWalker(Configuration conf) {
+        this.conf = conf;
+        threads = conf.getInt(THREADS, 16);
+        batchSize = conf.getInt(BATCH, 500);
+    }
+
+    // Glob on the file name, or on the path below the root if it contains '/'
+    public TreeWalker setName(String glob) {
+        name = new GlobPattern(glob);
+        nameIsPath = glob.contains("/");
+        return this;
+    }
+
+    // Only files last modified before this time (ms since the epoch)
+    public TreeWalker setModifiedBefore(long time) {
+        modifiedBefore = time;
+        return this;
+    }
+
+    // Applied to every matching file; null only counts them
+    public TreeWalker setAction(FileAction action) {
+        this.action = action;
+        return this;
+    }
+
+    // Keep the summaries of directories up to this many levels below the root
+    public TreeWalker setRollupDepth(int depth) {
+        rollupDepth = depth;
+        return this;
+    }
+
+    // Summaries kept by setRollupDepth, by path
+    public Map<String, Summary> getRollups() {
+        return rollups;
+    }
+
+    public long getListErrors() {
+        return listErrors.get();
+    }
+
+    public synchronized Summary walk(Path root) throws IOException, InterruptedException {
+        fs = root.getFileSystem(conf);
+        root = fs.makeQualified(root);
+        if (!fs.getFileStatus(root).isDirectory()) {
+            throw new IOException(root + " is not a directory");
+        }
+        rootPath = root.toUri().getPath();
+        rollups.clear();
+        done = new CountDownLatch(1);
+        pool = Executors.newFixedThreadPool(threads);
+        ScheduledExecutorService reporter = startReporter();
+        try {
+            Summary summary = new Summary(root, 0, null);
+            submitListing(summary);
+            done.await();
+            return summary;
+        } finally {
+            reporter.shutdownNow();
+            pool.shutdownNow();
+        }
+    }
+
+    private void submitListing(final Summary dir) {
+        pool.execute(new Runnable() {
+            public void run() {
+                try {
+                    list(dir);
+                } finally {
+                    complete(dir);
+                }
+            }
+        });
+    }
+
+    private void list(Summary dir) {
+        List<FileStatus> batch = new ArrayList<FileStatus>();
+        try {
+            RemoteIterator<FileStatus> it = fs.listStatusIterator(dir.path);
+            while (it.hasNext()) {
+                FileStatus status = it.next();
+                if (status.isDirectory()) {
+                    dir.dirs.incrementAndGet();
+                    scannedDirs.incrementAndGet();
+                    dir.pending.incrementAndGet();
+                    submitListing(new Summary(status.getPath(), dir.depth + 1, dir));
+                    continue;
+                }
+                dir.files.incrementAndGet();
+                dir.bytes.addAndGet(status.getLen());
+                scannedFiles.incrementAndGet();
+                if (matches(status)) {
+                    dir.matched.incrementAndGet();
+                    dir.matchedBytes.addAndGet(status.getLen());
+                    if (action != null) {
+                        batch.add(status);
+                        if (batch.size() >= batchSize) {
+                            submitBatch(dir, batch);
+                            batch = new ArrayList<FileStatus>();
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // e.g. removed while we walk: report and carry on with the rest of the tree
+            listErrors.incrementAndGet();
+            System.err.println("Cannot list " + dir.path + ": " + e.getMessage());
+        }
+        if (!batch.isEmpty()) {
+            submitBatch(dir, batch);
+        }
+    }
+
+    private void submitBatch(final Summary dir, final List<FileStatus> batch) {
+        dir.pending.incrementAndGet();
+        pool.execute(new Runnable() {
+            public void run() {
+                try {
+                    for (FileStatus file : batch) {
+                        try {
+                            if (action.apply(fs, file, relative(file.getPath()))) {
+                                dir.applied.incrementAndGet();
+                            } else {
+                                dir.failed.incrementAndGet();
+                            }
+                        } catch (IOException e) {
+                            dir.failed.incrementAndGet();
+                            System.err.println(file.getPath() + ": " + e.getMessage());
+                        }
+                    }
+                } finally {
+                    complete(dir);
+                }
+            }
+        });
+    }
+
+    // Runs once per finished piece of work; the last one rolls the directory up
+    private void complete(Summary dir) {
+        while (dir.pending.decrementAndGet() == 0) {
+            if (dir.depth <= rollupDepth) {
+                rollups.put(dir.path.toUri().getPath(), dir);
+            }
+            if (dir.parent == null) {
+                done.countDown();
+                return;
+            }
+            dir.addTo(dir.parent);
+            dir = dir.parent;
+        }
+    }
+
+    private boolean matches(FileStatus file) {
+        if (file.getModificationTime() >= modifiedBefore) {
+            return false;
+        }
+        if (name == null) {
+            return true;
+        }
+        return name.matches(nameIsPath ? relative(file.getPath()) : file.getPath().getName());
+    }
+
+    private String relative(Path path) {
+        String relative = path.toUri().getPath().substring(rootPath.length());
+        return relative.startsWith("/") ? relative.substring(1) : relative;
+    }
+
+    private ScheduledExecutorService startReporter() {
+        final long start = System.nanoTime();
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        int seconds = conf.getInt(REPORT_SECONDS, 10);
+        reporter.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                double elapsed = (System.nanoTime() - start) / 1e9;
+                System.err.printf("  %d dirs, %d files scanned, %.0f files/s%n", scannedDirs.get(),
+                        scannedFiles.get(), scannedFiles.get() / elapsed);
+            }
+        }, seconds, seconds, TimeUnit.SECONDS);
+        return reporter;
+    }
+
+    private static String format(long time) {
+        return new SimpleDateFormat("yyyy-MM-dd HH:mm").format(new Date(time));
+    }
+
+    private static String human(long bytes) {
+        return StringUtils.TraditionalBinaryPrefix.long2String(bytes, "", 1);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Configuration conf = new Configuration();
+        String[] rest = new GenericOptionsParser(conf, args).getRemainingArgs();
+        String command = rest.length > 0 ? rest[0] : "";
+        TreeWalker walker = new TreeWalker(conf);
+        boolean dryRun = false;
+        int i = 1;
+        for (; i < rest.length && rest[i].startsWith("-"); i++) {
+            if (rest[i].equals("-dryrun")) {
+                dryRun = true;
+            } else if (rest[i].equals("-depth") && i + 1 < rest.length) {
+                walker.setRollupDepth(Integer.parseInt(rest[++i]));
+            } else if (rest[i].equals("-name") && i + 1 < rest.length) {
+                walker.setName(rest[++i]);
+            } else if (rest[i].equals("-older") && i + 1 < rest.length) {
+                walker.setModifiedBefore(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(Long.parseLong(rest[++i])));
+            } else if (rest[i].equals("-before") && i + 1 < rest.length) {
+                walker.setModifiedBefore(new SimpleDateFormat("yyyy-MM-dd").parse(rest[++i]).getTime());
+            } else {
+                command = "";
+            }
+        }
+        int paths = command.equals("mv") ? 2 : 1;
+        if (!command.matches("du|ls|rm|mv") || rest.length - i != paths) {
+            System.err.println("Usage: TreeWalker du [-depth N] <dir>");
+            System.err.println("       TreeWalker ls [predicates] <dir>");
+            System.err.println("       TreeWalker rm [-dryrun] [predicates] <dir>");
+            System.err.println("       TreeWalker mv [-dryrun] [predicates] <dir> <target dir>");
+            System.err.println("predicates: -name <glob> -older <days> -before <yyyy-MM-dd>");
+            System.exit(2);
+        }
+
+        if (command.equals("du")) {
+            walker.setRollupDepth(Math.max(walker.rollupDepth, 1));
+        } else if (command.equals("ls") || dryRun) {
+            walker.setAction(PRINT);
+        } else if (command.equals("rm")) {
+            walker.setAction(DELETE);
+        } else {
+            Path target = new Path(rest[i + 1]);
+            walker.setAction(moveTo(target.getFileSystem(conf).makeQualified(target)));
+        }
+
+        long start = System.nanoTime();
+        Summary total = walker.walk(new Path(rest[i]));
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        for (Summary dir : walker.getRollups().values()) {
+            System.out.printf("%14d %8s %10d %8d  %s%n", dir.getBytes(), human(dir.getBytes()),
+                    dir.getFiles(), dir.getDirs(), dir.getPath());
+        }
+        System.err.printf("Scanned %d dirs, %d files (%s) in %.1f s, %.0f files/s%n", total.getDirs() + 1,
+                total.getFiles(), human(total.getBytes()), seconds, total.getFiles() / seconds);
+        if (!command.equals("du")) {
+            String done = dryRun ? "would be " + (command.equals("rm") ? "deleted" : "moved")
+                    : command.equals("rm") ? "deleted" : command.equals("mv") ? "moved" : "listed";
+            System.err.printf("Matched %d files (%s), %d %s, %d failed%n", total.getMatched(),
+                    human(total.getMatchedBytes()), total.getApplied(), done, total.getFailed());
+        }
+        System.exit(total.getFailed() == 0 && walker.getListErrors() == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,219 @@
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+
+// Splits UTF-8 text into tokens by scanning the bytes in place, the way
+// StringTokenizer splits a String, without decoding the line into a String.
+// Tokens are handed out through a caller-owned Text, so the per-token path
+// allocates nothing. With the default settings the tokens are identical to
+// new StringTokenizer(value.toString()).
+public class Utf8Tokenizer {
+
+    // Delimiter characters (StringTokenizer's defaults unless overridden)
+    public static final String DELIMITERS = "wordcount.tokenizer.delimiters";
+    // Also split on every Unicode space / whitespace character
+    public static final String UNICODE_WHITESPACE = "wordcount.tokenizer.unicode.whitespace";
+    // Lowercase tokens (full Unicode case mapping per code point)
+    public static final String LOWERCASE = "wordcount.tokenizer.lowercase";
+    // Drop punctuation characters from tokens; all-punctuation tokens disappear
+    public static final String STRIP_PUNCTUATION = "wordcount.tokenizer.strip.punctuation";
+
+    public static final String DEFAULT_DELIMITERS = " \t\n\r\f";
+
+    private final boolean[] asciiDelimiters = new boolean[128];
+    private final int[] otherDelimiters;
+    private final boolean unicodeWhitespace;
+    private final boolean lowercase;
+    private final boolean stripPunctuation;
+
+    private byte[] bytes;
+    private int pos;
+    private int end;
+
+    // Normalized token bytes; only used when lowercasing or stripping
+    private byte[] scratch = new byte[64];
+
+    // Code point decoded by decode() and its encoded length
+    private int cp;
+    private int cpLength;
+
+    public Utf8Tokenizer(Configuration conf) {
+        this(conf.get(DELIMITERS, DEFAULT_DELIMITERS),
+                conf.getBoolean(UNICODE_WHITESPACE, false),
+                conf.getBoolean(LOWERCASE, false),
+                conf.getBoolean(STRIP_PUNCTUATION, false));
+    }
+
+    public Utf8Tokenizer(String delimiters, boolean unicodeWhitespace,
+                         boolean lowercase, boolean stripPunctuation) {
+        this.unicodeWhitespace = unicodeWhitespace;
+        this.lowercase = lowercase;
+        this.stripPunctuation = stripPunctuation;
+        int[] others = new int[delimiters.length()];
+        int n = 0;
+        for (int i = 0; i < delimiters.length(); i += Character.charCount(delimiters.codePointAt(i))) {
+            int c = delimiters.codePointAt(i);
+            if (c < 128) {
+                asciiDelimiters[c] = true;
+            } else {
+                others[n++] = c;
+            }
+        }
+        otherDelimiters = Arrays.copyOf(others, n);
+    }
+
+    public void reset(Text line) {
+        reset(line.getBytes(), 0, line.getLength());
+    }
+
+    public void reset(byte[] bytes, int start, int len) {
+        this.bytes = bytes;
+        this.pos = start;
+        this.end = start + len;
+    }
+
+    // Stores the next token in word; returns false once the input is exhausted
+    public boolean next(Text word) {
+        boolean normalize = lowercase || stripPunctuation;
+        while (pos < end) {
+            // skip delimiters
+            decode(pos);
+            if (isDelimiter(cp)) {
+                pos += cpLength;
+                continue;
+            }
+
+            int start = pos;
+            int written = 0;
+            while (pos < end) {
+                decode(pos);
+                if (isDelimiter(cp)) break;
+                if (normalize) {
+                    written = appendNormalized(pos, written);
+                }
+                pos += cpLength;
+            }
+
+            if (!normalize) {
+                word.set(bytes, start, pos - start);
+                return true;
+            }
+            if (written > 0) {
+                word.set(scratch, 0, written);
+                return true;
+            }
+            // the token was nothing but punctuation: keep scanning
+        }
+        return false;
+    }
+
+    private boolean isDelimiter(int c) {
+        if (c >= 0 && c < 128) {
+            return asciiDelimiters[c];
+        }
+        if (c < 0) {
+            return false;
+        }
+        if (unicodeWhitespace && (Character.isWhitespace(c) || Character.isSpaceChar(c))) {
+            return true;
+        }
+        for (int d : otherDelimiters) {
+            if (d == c) return true;
+        }
+        return false;
+    }
+
+    private int appendNormalized(int at, int written) {
+        if (cp < 0) {
+            // malformed byte: pass it through untouched
+            return append(bytes[at], written);
+        }
+        if (stripPunctuation && isPunctuation(cp)) {
+            return written;
+        }
+        int c = cp;
+        if (lowercase) {
+            c = c < 128 ? (c >= 'A' && c <= 'Z' ? c + 32 : c) : Character.toLowerCase(c);
+        }
+        if (c < 0x80) {
+            return append((byte) c, written);
+        } else if (c < 0x800) {
+            written = append((byte) (0xC0 | (c >> 6)), written);
+        } else if (c < 0x10000) {
+            written = append((byte) (0xE0 | (c >> 12)), written);
+            written = append((byte) (0x80 | ((c >> 6) & 0x3F)), written);
+        } else {
+            written = append((byte) (0xF0 | (c >> 18)), written);
+            written = append((byte) (0x80 | ((c >> 12) & 0x3F)), written);
+            written = append((byte) (0x80 | ((c >> 6) & 0x3F)), written);
+        }
+        return append((byte) (0x80 | (c & 0x3F)), written);
+    }
+
+    private int append(byte b, int written) {
+        if (written == scratch.length) {
+            scratch = Arrays.copyOf(scratch, scratch.length * 2);
+        }
+        scratch[written] = b;
+        return written + 1;
+    }
+
+    // Decodes the code point at offset i into cp / cpLength. Malformed or
+    // truncated sequences decode as cp = -1 with a length of one byte.
+    private void decode(int i) {
+        int b = bytes[i];
+        if (b >= 0) {
+            cp = b;
+            cpLength = 1;
+            return;
+        }
+        int len;
+        int c;
+        if ((b & 0xE0) == 0xC0) {
+            len = 2;
+            c = b & 0x1F;
+        } else if ((b & 0xF0) == 0xE0) {
+            len = 3;
+            c = b & 0x0F;
+        } else if ((b & 0xF8) == 0xF0) {
+            len = 4;
+            c = b & 0x07;
+        } else {
+            cp = -1;
+            cpLength = 1;
+            return;
+        }
+        if (i + len > end) {
+            cp = -1;
+            cpLength = 1;
+            return;
+        }
+        for (int k = 1; k < len; k++) {
+            int cont = bytes[i + k];
+            if ((cont & 0xC0) != 0x80) {
+                cp = -1;
+                cpLength = 1;
+                return;
+            }
+            c = (c << 6) | (cont & 0x3F);
+        }
+        cp = c;
+        cpLength = len;
+    }
+
+    private static boolean isPunctuation(int c) {
+        switch (Character.getType(c)) {
+            case Character.CONNECTOR_PUNCTUATION:
+            case Character.DASH_PUNCTUATION:
+            case Character.START_PUNCTUATION:
+            case Character.END_PUNCTUATION:
+            case Character.INITIAL_QUOTE_PUNCTUATION:
+            case Character.FINAL_QUOTE_PUNCTUATION:
+            case Character.OTHER_PUNCTUATION:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// DistanceKernel using the Vector API: one fused multiply-add per lane group
+// across the dimensions of a point, scalar code for the remainder. Worth it
+// for wide feature vectors; for 2-3 dimensions the loop is all remainder.
+//
+// Compile and run with --add-modules jdk.incubator.vector. DistanceKernel.get()
+// loads this class reflectively, so jobs built without it still work.
+public class VectorDistanceKernel extends DistanceKernel {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    public String name() {
+        return "vector(" + SPECIES.length() + " lanes)";
+    }
+
+    @Override
+    public double distanceSq(double[] points, int pointOffset, double[] matrix, int rowOffset, int dims) {
+        int j = 0;
+        double sum = 0;
+        int bound = SPECIES.loopBound(dims);
+        if (bound > 0) {
+            DoubleVector acc = DoubleVector.zero(SPECIES);
+            for (; j < bound; j += SPECIES.length()) {
+                DoubleVector a = DoubleVector.fromArray(SPECIES, points, pointOffset + j);
+                DoubleVector b = DoubleVector.fromArray(SPECIES, matrix, rowOffset + j);
+                DoubleVector d = a.sub(b);
+                acc = d.fma(d, acc);
+            }
+            sum = acc.reduceLanes(VectorOperators.ADD);
+        }
+        for (; j < dims; j++) {
+            double d = points[pointOffset + j] - matrix[rowOffset + j];
+            sum += d * d;
+        }
+        return sum;
+    }
+}
@@ -1,67 +1,313 @@
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.util.StringTokenizer;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Counters;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.TaskType;
+import org.apache.hadoop.mapreduce.lib.input.CombineTextInputFormat;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
 
 public class WordCount {
 
+    // Use MyAggregatingMapper instead of MyMapper
+    public static final String IN_MAPPER = "wordcount.inmapper";
+    // Heap budget of the in-mapper table before it is flushed
+    public static final String IN_MAPPER_MEMORY_MB = "wordcount.inmapper.memory.mb";
+    // Target size of the splits small input files are packed into; 0 keeps one split per file
+    public static final String COMBINE_SPLIT_MB = "wordcount.combine.split.mb";
+
     public static class MyMapper
             extends Mapper<Object, Text, Text, IntWritable> {
 
         private final static IntWritable one = new IntWritable(1);
         private Text word = new Text();
+        private Utf8Tokenizer words;
+        private Counter records;
+        private JobMetrics.Timer timer;
+
+        protected void setup(Context context) {
+            words = new Utf8Tokenizer(context.getConfiguration());
+            records = context.getCounter(JobMetrics.Counters.RECORDS_IN);
+            timer = new JobMetrics.Timer(context.getConfiguration(), "map");
+        }
 
         public void map(Object key, Text value, Context context)
                 throws IOException, InterruptedException {
 
-            String line = value.toString();
-            StringTokenizer words = new StringTokenizer(line);
-
-            while (words.hasMoreTokens()) {
-                word.set(words.nextToken());
+            long start = timer.start();
+            words.reset(value);
+            while (words.next(word)) {
                 context.write(word, one);
             }
+            records.increment(1);
+            timer.stop(start);
+        }
+
+        protected void cleanup(Context context) {
+            timer.publish(context);
+        }
+    }
+
+    // Counts words in the mapper and writes each distinct word once per flush.
+    // The table is flushed in cleanup() or whenever it outgrows its memory budget.
+    public static class MyAggregatingMapper
+            extends Mapper<Object, Text, Text, IntWritable> implements BytesCountTable.Visitor {
+
+        private final IntWritable count = new IntWritable();
+        private Text word = new Text();
+        private Utf8Tokenizer words;
+        private BytesCountTable counts;
+        private long memoryBudget;
+        private Context context;
+        private Counter records;
+        private JobMetrics.Timer timer;
+
+        protected void setup(Context context) {
+            this.context = context;
+            words = new Utf8Tokenizer(context.getConfiguration());
+            memoryBudget = context.getConfiguration().getLong(IN_MAPPER_MEMORY_MB, 64) << 20;
+            counts = new BytesCountTable(1 << 14);
+            records = context.getCounter(JobMetrics.Counters.RECORDS_IN);
+            timer = new JobMetrics.Timer(context.getConfiguration(), "map");
+        }
+
+        public void map(Object key, Text value, Context context)
+                throws IOException, InterruptedException {
+
+            long start = timer.start();
+            words.reset(value);
+            while (words.next(word)) {
+                counts.increment(word.getBytes(), 0, word.getLength(), 1);
+            }
+            records.increment(1);
+            timer.stop(start);
+
+            if (counts.memoryBytes() > memoryBudget) {
+                flush(context);
+            }
+        }
+
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            flush(context);
+            timer.publish(context);
+        }
+
+        private void flush(Context context) throws IOException, InterruptedException {
+            counts.forEach(this);
+            counts.clear();
+            if (counts.memoryBytes() > memoryBudget) {
+                // would flush on every record from here on
+                throw new IOException("Empty in-mapper table takes " + counts.memoryBytes()
+                        + " bytes, over the " + IN_MAPPER_MEMORY_MB + " budget of " + memoryBudget);
+            }
+        }
+
+        public void visit(byte[] bytes, int start, int len, int n)
+                throws IOException, InterruptedException {
+            word.set(bytes, start, len);
+            count.set(n);
+            context.write(word, count);
         }
     }
 
     public static class MyReducer
             extends Reducer<Text, IntWritable, Text, IntWritable> {
 
+        private Counter records;
+        private JobMetrics.Timer timer;
+
+        protected void setup(Context context) {
+            // also the combiner: only the real reducer counts output records
+            boolean combining = context.getTaskAttemptID().getTaskType() == TaskType.MAP;
+            records = combining ? null : context.getCounter(JobMetrics.Counters.RECORDS_OUT);
+            timer = new JobMetrics.Timer(context.getConfiguration(), combining ? "combine" : "reduce");
+        }
+
         public void reduce(Text key, Iterable<IntWritable> values,
                            Context context) throws IOException, InterruptedException {
 
+            long start = timer.start();
             int sum = 0;
             for (IntWritable val : values) {
                 sum += val.get();
             }
             context.write(key, new IntWritable(sum));
+            if (records != null) {
+                records.increment(1);
+            }
+            timer.stop(start);
+        }
+
+        protected void cleanup(Context context) {
+            timer.publish(context);
         }
     }
 
-    public static void main(String[] args) throws Exception {
+    // MyAggregatingMapper and MyReducer for the in-process fast path: one
+    // table per worker, merged into the larger one as workers finish
+    static class LocalCounts implements BytesCountTable.Visitor {
+        private final Utf8Tokenizer words;
+        private final Text word = new Text();
+        private BytesCountTable counts = new BytesCountTable(1 << 14);
+        private long lines;
 
-        Configuration conf = new Configuration();
+        LocalCounts(Configuration conf) {
+            words = new Utf8Tokenizer(conf);
+        }
+
+        void add(byte[] bytes, int start, int len) {
+            lines++;
+            words.reset(bytes, start, len);
+            while (words.next(word)) {
+                counts.increment(word.getBytes(), 0, word.getLength(), 1);
+            }
+        }
+
+        LocalCounts merge(LocalCounts other) {
+            lines += other.lines;
+            if (other.counts.size() > counts.size()) {
+                BytesCountTable smaller = counts;
+                counts = other.counts;
+                other.counts = smaller;
+            }
+            try {
+                other.counts.forEach(this);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return this;
+        }
+
+        public void visit(byte[] bytes, int start, int len, int n) {
+            counts.increment(bytes, start, len, n);
+        }
+
+        // "word<TAB>count" lines in Text order, as the reducer would write them
+        void write(Configuration conf, Path output) throws IOException {
+            final List<byte[]> keys = new ArrayList<byte[]>(counts.size());
+            final List<Integer> values = new ArrayList<Integer>(counts.size());
+            try {
+                counts.forEach(new BytesCountTable.Visitor() {
+                    public void visit(byte[] bytes, int start, int len, int n) {
+                        keys.add(Arrays.copyOfRange(bytes, start, start + len));
+                        values.add(n);
+                    }
+                });
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            Integer[] order = new Integer[keys.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+                public int compare(Integer a, Integer b) {
+                    byte[] x = keys.get(a);
+                    byte[] y = keys.get(b);
+                    return WritableComparator.compareBytes(x, 0, x.length, y, 0, y.length);
+                }
+            });
+
+            OutputStream out = new BufferedOutputStream(LocalExecution.createOutput(conf, output), 1 << 16);
+            try {
+                for (Integer i : order) {
+                    out.write(keys.get(i));
+                    out.write(('\t' + Integer.toString(values.get(i)) + '\n').getBytes(StandardCharsets.UTF_8));
+                }
+            } finally {
+                out.close();
+            }
+            LocalExecution.markSuccess(conf, output);
+        }
+    }
+
+    // Returns the counters the job would have reported: lines in, words out
+    static Counters runLocal(final Configuration conf, Path input, Path output) throws IOException {
+        LocalCounts counts = LocalExecution.run(conf, input, new LocalExecution.LineAggregator<LocalCounts>() {
+            public LocalCounts create() {
+                return new LocalCounts(conf);
+            }
+
+            public void line(LocalCounts partial, byte[] bytes, int start, int len) {
+                partial.add(bytes, start, len);
+            }
+
+            public LocalCounts merge(LocalCounts a, LocalCounts b) {
+                return a.merge(b);
+            }
+        });
+        counts.write(conf, output);
+
+        Counters counters = new Counters();
+        counters.findCounter(JobMetrics.Counters.RECORDS_IN).increment(counts.lines);
+        counters.findCounter(JobMetrics.Counters.RECORDS_OUT).increment(counts.counts.size());
+        return counters;
+    }
+
+    static Job createJob(Configuration conf, Path output, Path... inputs) throws IOException {
         Job job = new Job(conf, "WordCount");
 
         job.setJarByClass(WordCount.class);
-        job.setMapperClass(MyMapper.class);
+        job.setMapperClass(conf.getBoolean(IN_MAPPER, false) ? MyAggregatingMapper.class : MyMapper.class);
         job.setCombinerClass(MyReducer.class);
         job.setReducerClass(MyReducer.class);
 
         job.setOutputKeyClass(Text.class);
         job.setOutputValueClass(IntWritable.class);
 
-        FileInputFormat.addInputPath(job, new Path(args[0]));
-        FileOutputFormat.setOutputPath(job, new Path(args[1]));
+        // Pack many small files into few splits; CombineTextInputFormat groups
+        // blocks by node, then rack, and reads the files of a split one after another
+        long splitMb = conf.getLong(COMBINE_SPLIT_MB, 128);
+        if (splitMb > 0) {
+            job.setInputFormatClass(CombineTextInputFormat.class);
+            CombineTextInputFormat.setMaxInputSplitSize(job, splitMb << 20);
+        }
+
+        FileInputFormat.setInputPaths(job, inputs);
+        FileOutputFormat.setOutputPath(job, output);
+        return job;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        Configuration conf = new Configuration();
+        args = new GenericOptionsParser(conf, args).getRemainingArgs();
+        Path input = new Path(args[0]);
+        Path output = new Path(args[1]);
+
+        long start = System.currentTimeMillis();
+        Path report = new Path(output, JobMetrics.REPORT_FILE);
+
+        // Small inputs: skip job submission and count in this JVM
+        if (LocalExecution.useLocal(conf, input)) {
+            System.out.println("Input is below the " + LocalExecution.MAX_INPUT_MB + " threshold, counting in-process");
+            Counters counters = runLocal(conf, input, output);
+            new JobMetrics.Report("WordCount").set("mode", "local")
+                    .set("wall_millis", System.currentTimeMillis() - start).counters(counters).write(conf, report);
+            System.exit(0);
+        }
 
-        System.exit(job.waitForCompletion(true) ? 0 : 1);
+        Job job = createJob(conf, output, input);
+        boolean ok = job.waitForCompletion(true);
+        JobMetrics.report(job, System.currentTimeMillis() - start).write(conf, report);
+        System.exit(ok ? 0 : 1);
     }
 }
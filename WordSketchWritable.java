@@ -0,0 +1,118 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+
+// The per-task summary of ApproximateWordCount: a Count-Min sketch for word
+// frequencies, Space-Saving counters for the heavy hitters and a HyperLogLog
+// for the number of distinct words. Memory and serialized size depend only
+// on the configuration, not on the input.
+public class WordSketchWritable implements Writable {
+
+    public static final String CMS_EPSILON = "wordcount.approx.cms.epsilon";
+    public static final String CMS_DELTA = "wordcount.approx.cms.delta";
+    public static final String TOP_COUNTERS = "wordcount.approx.topk.counters";
+    public static final String HLL_PRECISION = "wordcount.approx.hll.precision";
+
+    private final CountMinSketch frequencies;
+    private final SpaceSaving heavyHitters;
+    private final HyperLogLog distinct;
+
+    // For deserialization
+    public WordSketchWritable() {
+        frequencies = new CountMinSketch();
+        heavyHitters = new SpaceSaving();
+        distinct = new HyperLogLog();
+    }
+
+    public WordSketchWritable(Configuration conf) {
+        frequencies = new CountMinSketch(conf.getDouble(CMS_EPSILON, 1e-4), conf.getDouble(CMS_DELTA, 0.01));
+        heavyHitters = new SpaceSaving(conf.getInt(TOP_COUNTERS, 1000));
+        distinct = new HyperLogLog(conf.getInt(HLL_PRECISION, 14));
+    }
+
+    public void add(Text word) {
+        long hash = hash(word.getBytes(), 0, word.getLength());
+        frequencies.add(hash, 1);
+        distinct.add(hash);
+        heavyHitters.offer(word, 1);
+    }
+
+    public void merge(WordSketchWritable other) {
+        frequencies.merge(other.frequencies);
+        heavyHitters.merge(other.heavyHitters);
+        distinct.merge(other.distinct);
+    }
+
+    public CountMinSketch frequencies() {
+        return frequencies;
+    }
+
+    public SpaceSaving heavyHitters() {
+        return heavyHitters;
+    }
+
+    public HyperLogLog distinct() {
+        return distinct;
+    }
+
+    public long estimate(Text word) {
+        return frequencies.estimate(hash(word.getBytes(), 0, word.getLength()));
+    }
+
+    public void write(DataOutput out) throws IOException {
+        frequencies.write(out);
+        heavyHitters.write(out);
+        distinct.write(out);
+    }
+
+    public void readFields(DataInput in) throws IOException {
+        frequencies.readFields(in);
+        heavyHitters.readFields(in);
+        distinct.readFields(in);
+    }
+
+    // MurmurHash64A: both halves are used by the Count-Min rows and the top
+    // bits pick the HyperLogLog register, so all 64 bits need to be good.
+    // The tail switch falls through on purpose, as in the reference code
+    @SuppressWarnings("fallthrough")
+    static long hash(byte[] data, int start, int len) {
+        final long m = 0xc6a4a7935bd1e995L;
+        final int r = 47;
+        long h = 0x9747b28cL ^ (len * m);
+
+        int end = start + (len & ~7);
+        for (int i = start; i < end; i += 8) {
+            long k = (data[i] & 0xffL)
+                    | (data[i + 1] & 0xffL) << 8
+                    | (data[i + 2] & 0xffL) << 16
+                    | (data[i + 3] & 0xffL) << 24
+                    | (data[i + 4] & 0xffL) << 32
+                    | (data[i + 5] & 0xffL) << 40
+                    | (data[i + 6] & 0xffL) << 48
+                    | (data[i + 7] & 0xffL) << 56;
+            k *= m;
+            k ^= k >>> r;
+            k *= m;
+            h ^= k;
+            h *= m;
+        }
+        switch (len & 7) {
+            case 7: h ^= (data[end + 6] & 0xffL) << 48;
+            case 6: h ^= (data[end + 5] & 0xffL) << 40;
+            case 5: h ^= (data[end + 4] & 0xffL) << 32;
+            case 4: h ^= (data[end + 3] & 0xffL) << 24;
+            case 3: h ^= (data[end + 2] & 0xffL) << 16;
+            case 2: h ^= (data[end + 1] & 0xffL) << 8;
+            case 1: h ^= data[end] & 0xffL;
+                h *= m;
+        }
+        h ^= h >>> r;
+        h *= m;
+        h ^= h >>> r;
+        return h;
+    }
+}
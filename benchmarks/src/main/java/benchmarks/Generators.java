@@ -0,0 +1,120 @@
+package benchmarks;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.hadoop.io.Text;
+
+// Seeded synthetic inputs, so every run and every machine benchmarks the
+// same data: word corpora with a Zipf-skewed vocabulary and clustered point
+// clouds in any number of dimensions.
+final class Generators {
+
+    private Generators() {
+    }
+
+    // lines of wordsPerLine space-separated words; word r (by rank) has
+    // probability proportional to 1 / r^skew, as in natural-language text
+    static Text[] zipfCorpus(long seed, int vocabulary, double skew, int lines, int wordsPerLine) {
+        Random random = new Random(seed);
+        String[] words = vocabulary(random, vocabulary);
+        double[] cdf = new double[vocabulary];
+        double total = 0;
+        for (int r = 0; r < vocabulary; r++) {
+            total += 1 / Math.pow(r + 1, skew);
+            cdf[r] = total;
+        }
+
+        Text[] corpus = new Text[lines];
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            line.setLength(0);
+            for (int w = 0; w < wordsPerLine; w++) {
+                int rank = Arrays.binarySearch(cdf, random.nextDouble() * total);
+                if (rank < 0) {
+                    rank = Math.min(-rank - 1, vocabulary - 1);
+                }
+                if (w > 0) line.append(' ');
+                line.append(words[rank]);
+            }
+            corpus[i] = new Text(line.toString());
+        }
+        return corpus;
+    }
+
+    // Distinct lowercase words of 2 to 12 letters
+    private static String[] vocabulary(Random random, int size) {
+        Set<String> seen = new HashSet<String>();
+        String[] words = new String[size];
+        char[] letters = new char[12];
+        int n = 0;
+        while (n < size) {
+            int len = 2 + random.nextInt(11);
+            for (int i = 0; i < len; i++) {
+                letters[i] = (char) ('a' + random.nextInt(26));
+            }
+            String word = new String(letters, 0, len);
+            if (seen.add(word)) {
+                words[n++] = word;
+            }
+        }
+        return words;
+    }
+
+    // k cluster centres, uniform in [0, 100)^dims
+    static double[][] centres(Random random, int k, int dims) {
+        double[][] centres = new double[k][dims];
+        for (double[] c : centres) {
+            for (int j = 0; j < dims; j++) {
+                c[j] = random.nextDouble() * 100;
+            }
+        }
+        return centres;
+    }
+
+    // n points around randomly chosen centres, Gaussian with the given spread
+    static double[][] points(Random random, double[][] centres, int n, double spread) {
+        double[][] points = new double[n][];
+        for (int i = 0; i < n; i++) {
+            double[] c = centres[random.nextInt(centres.length)];
+            double[] p = new double[c.length];
+            for (int j = 0; j < c.length; j++) {
+                p[j] = c[j] + random.nextGaussian() * spread;
+            }
+            points[i] = p;
+        }
+        return points;
+    }
+
+    // The centres moved a little, like the centroids of a pass that has not converged yet
+    static double[][] perturb(Random random, double[][] centres, double by) {
+        double[][] moved = new double[centres.length][];
+        for (int i = 0; i < centres.length; i++) {
+            moved[i] = centres[i].clone();
+            for (int j = 0; j < moved[i].length; j++) {
+                moved[i][j] += random.nextGaussian() * by;
+            }
+        }
+        return moved;
+    }
+
+    // "x,y,..." lines; with idPrefix, "<idPrefix><n>,x,y,..." like the student CSV
+    static Text[] csv(double[][] points, String idPrefix) {
+        Text[] lines = new Text[points.length];
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < points.length; i++) {
+            line.setLength(0);
+            if (idPrefix != null) {
+                line.append(idPrefix).append(i).append(',');
+            }
+            for (int j = 0; j < points[i].length; j++) {
+                if (j > 0) line.append(',');
+                line.append(String.format("%.4f", points[i][j]));
+            }
+            lines[i] = new Text(line.toString());
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,142 @@
+package benchmarks;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// The KMeans assignment mappers and the centroid reducer over a seeded cloud
+// of points around k centres, with the centroids of a pass that has not quite
+// converged. One invocation is one map task over all points (scored in
+// points per second) or one reduce over PARTIALS partial sums.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class KMeansBenchmark {
+
+    static final int POINTS = 50000;
+    static final int PARTIALS = 20000;
+
+    @Param({"2", "16", "128"})
+    public int k;
+
+    @Param({"2", "16"})
+    public int dims;
+
+    @Param("42")
+    public long seed;
+
+    private File dir;
+    private Configuration conf;
+    private Text[] lines;
+    private Writable[] points;
+    private StubContexts.Shuffle partials;
+    private Mapper<Object, Text, IntWritable, Writable> textMapper;
+    private Mapper<Object, Writable, IntWritable, Writable> pointMapper;
+    private Reducer<IntWritable, Writable, IntWritable, Text> reducer;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        Random random = new Random(seed);
+        double[][] centres = Generators.centres(random, k, dims);
+        double[][] cloud = Generators.points(random, centres, POINTS, 5);
+        lines = Generators.csv(cloud, null);
+        points = new Writable[POINTS];
+        for (int i = 0; i < POINTS; i++) {
+            points[i] = (Writable) Repo.construct("PointWritable", (Object) cloud[i]);
+        }
+
+        // The mappers find their centroids in the cache files, like in a job
+        conf = new Configuration();
+        dir = Files.createTempDirectory("kmeans-bench").toFile();
+        Path centroids = writeCentroids(conf, dir, Generators.perturb(random, centres, 1));
+        conf.set(MRJobConfig.CACHE_FILES, centroids.toUri().toString());
+
+        textMapper = Repo.newInstance("KMeans$KMapper", conf);
+        pointMapper = Repo.newInstance("KMeans$PointMapper", conf);
+        reducer = Repo.newInstance("KMeans$KReducer", conf);
+
+        // Map output of PARTIALS / k map tasks: one partial sum per cluster each
+        Class<?> sumClass = Repo.type("ClusterSumWritable");
+        Method add = sumClass.getMethod("add", double[].class);
+        List<IntWritable> keys = new ArrayList<IntWritable>();
+        List<Writable> sums = new ArrayList<Writable>();
+        for (int i = 0; i < PARTIALS; i++) {
+            Writable sum = (Writable) Repo.construct("ClusterSumWritable", dims);
+            for (int p = 0; p < 5; p++) {
+                add.invoke(sum, (Object) cloud[random.nextInt(POINTS)]);
+            }
+            keys.add(new IntWritable(i % k));
+            sums.add(sum);
+        }
+        partials = new StubContexts.Shuffle(IntWritable.class, sumClass, keys, sums);
+    }
+
+    static Path writeCentroids(Configuration conf, File dir, double[][] centroids) throws Exception {
+        Path path = new Path(dir.toURI().toString(), "centroids-0");
+        FileSystem fs = path.getFileSystem(conf);
+        Repo.invoke("CentroidFile", "write", fs, path, centroids);
+        return fs.makeQualified(path);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        FileUtil.fullyDelete(dir);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public StubContexts.Reporter textMapper(Blackhole bh) throws Exception {
+        StubContexts.Reporter reporter = new StubContexts.Reporter();
+        textMapper.run(StubContexts.mapContext(textMapper, conf, lines, reporter, bh));
+        return reporter;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public StubContexts.Reporter pointMapper(Blackhole bh) throws Exception {
+        StubContexts.Reporter reporter = new StubContexts.Reporter();
+        pointMapper.run(StubContexts.mapContext(pointMapper, conf, points, reporter, bh));
+        return reporter;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PARTIALS)
+    public StubContexts.Reporter reduce(Blackhole bh) throws Exception {
+        StubContexts.Reporter reporter = new StubContexts.Reporter();
+        reducer.run(StubContexts.reduceContext(reducer, conf, partials, reporter, bh));
+        return reporter;
+    }
+}
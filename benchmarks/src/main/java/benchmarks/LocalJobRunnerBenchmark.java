@@ -0,0 +1,154 @@
+package benchmarks;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.MRConfig;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Whole jobs on the LocalJobRunner, input read from and output written to
+// the local file system: what the hot paths add up to once splits, spills,
+// the sort and the committer are in. The primary score is jobs per second;
+// the "records" and "bytes" secondary scores are the input throughput.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class LocalJobRunnerBenchmark {
+
+    @Param("200000")
+    public int lines;
+
+    @Param("16")
+    public int k;
+
+    @Param("42")
+    public long seed;
+
+    // Input processed by the jobs of one iteration
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Processed {
+        public long records;
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            records = 0;
+            bytes = 0;
+        }
+    }
+
+    private File dir;
+    private Configuration conf;
+    private Path words;
+    private Path points;
+    private Path centroids;
+    private Path output;
+    private long wordBytes;
+    private long pointBytes;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("localjob-bench").toFile();
+        Path root = new Path(dir.toURI().toString());
+        conf = new Configuration();
+        conf.set(MRConfig.FRAMEWORK_NAME, MRConfig.LOCAL_FRAMEWORK_NAME);
+        conf.set(FileSystem.FS_DEFAULT_NAME_KEY, "file:///");
+        // waitForCompletion polls every 5 s by default, which would be most of a small job
+        conf.setInt(Job.COMPLETION_POLL_INTERVAL_KEY, 50);
+        FileSystem fs = root.getFileSystem(conf);
+
+        words = new Path(root, "words");
+        wordBytes = write(fs, new Path(words, "corpus.txt"),
+                Generators.zipfCorpus(seed, 50000, 1.0, lines, 10));
+
+        Random random = new Random(seed);
+        double[][] centres = Generators.centres(random, k, 2);
+        points = new Path(root, "points");
+        pointBytes = write(fs, new Path(points, "points.txt"),
+                Generators.csv(Generators.points(random, centres, lines, 5), null));
+        centroids = KMeansBenchmark.writeCentroids(conf, dir, Generators.perturb(random, centres, 1));
+
+        output = new Path(root, "out");
+    }
+
+    private static long write(FileSystem fs, Path file, Text[] lines) throws IOException {
+        OutputStream out = new BufferedOutputStream(fs.create(file, true));
+        try {
+            for (Text line : lines) {
+                out.write(line.getBytes(), 0, line.getLength());
+                out.write('\n');
+            }
+        } finally {
+            out.close();
+        }
+        return fs.getFileStatus(file).getLen();
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteOutput() throws IOException {
+        output.getFileSystem(conf).delete(output, true);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        FileUtil.fullyDelete(dir);
+    }
+
+    @Benchmark
+    public void wordCountJob(Processed processed) throws Exception {
+        Job job = (Job) Repo.invoke("WordCount", "createJob", conf, output, new Path[] {words});
+        run(job);
+        processed.records += lines;
+        processed.bytes += wordBytes;
+    }
+
+    // The in-process path WordCount takes for small local inputs
+    @Benchmark
+    public void wordCountInProcess(Processed processed) throws Exception {
+        Repo.invoke("WordCount", "runLocal", conf, words, output);
+        processed.records += lines;
+        processed.bytes += wordBytes;
+    }
+
+    @Benchmark
+    public void kmeansIterationJob(Processed processed) throws Exception {
+        Job job = (Job) Repo.invoke("KMeans", "createJob", conf, points, output, centroids, 1);
+        run(job);
+        processed.records += lines;
+        processed.bytes += pointBytes;
+    }
+
+    private static void run(Job job) throws Exception {
+        if (!job.waitForCompletion(false)) {
+            throw new IllegalStateException(job.getJobName() + " failed");
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package benchmarks;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.util.ReflectionUtils;
+
+// The jobs live in the default package, which a named package cannot import
+// (and JMH will not generate code for benchmarks in the default package).
+// Their classes are loaded by name, the way Hadoop loads mapper and reducer
+// classes from a job configuration. The timed code then runs through the
+// public Mapper.run / Reducer.run, so no reflection is measured.
+final class Repo {
+
+    private Repo() {
+    }
+
+    static Class<?> type(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Job class " + name + " is not on the classpath", e);
+        }
+    }
+
+    // Like the framework: instantiates and, for a JobConf, configures the object
+    @SuppressWarnings("unchecked")
+    static <T> T newInstance(String name, Configuration conf) {
+        return (T) ReflectionUtils.newInstance(type(name), conf);
+    }
+
+    static Object construct(String name, Object... args) throws Exception {
+        for (java.lang.reflect.Constructor<?> c : type(name).getConstructors()) {
+            if (c.getParameterCount() == args.length) {
+                return c.newInstance(args);
+            }
+        }
+        throw new NoSuchMethodException(name + " has no public constructor with " + args.length + " arguments");
+    }
+
+    // Calls a static method by name and argument count, package-private ones included
+    static Object invoke(String name, String method, Object... args) throws Exception {
+        for (Method m : type(name).getDeclaredMethods()) {
+            if (m.getName().equals(method) && m.getParameterCount() == args.length) {
+                m.setAccessible(true);
+                try {
+                    return m.invoke(null, args);
+                } catch (InvocationTargetException e) {
+                    if (e.getCause() instanceof Exception) {
+                        throw (Exception) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+        }
+        throw new NoSuchMethodException(name + "." + method + " with " + args.length + " arguments");
+    }
+}
@@ -0,0 +1,32 @@
+package benchmarks;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.ProfilerConfig;
+
+// The JMH command line, with the GC profiler on by default so every result
+// comes with its allocation rate (gc.alloc.rate.norm: bytes per operation).
+//
+//   java -jar target/benchmarks.jar [JMH options] [benchmark regexp]
+public class Run {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        if (cmd.shouldHelp() || cmd.shouldList() || cmd.shouldListWithParams()
+                || cmd.shouldListProfilers() || cmd.shouldListResultFormats()) {
+            Main.main(args);
+            return;
+        }
+
+        boolean gc = false;
+        for (ProfilerConfig profiler : cmd.getProfilers()) {
+            gc |= profiler.getKlass().equals("gc") || profiler.getKlass().equals(GCProfiler.class.getName());
+        }
+        Options options = gc ? cmd : new OptionsBuilder().parent(cmd).addProfiler(GCProfiler.class).build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,228 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.mapred.RawKeyValueIterator;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.StatusReporter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.TaskType;
+import org.apache.hadoop.mapreduce.lib.map.WrappedMapper;
+import org.apache.hadoop.mapreduce.lib.reduce.WrappedReducer;
+import org.apache.hadoop.mapreduce.task.MapContextImpl;
+import org.apache.hadoop.mapreduce.task.ReduceContextImpl;
+import org.apache.hadoop.util.Progress;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Task contexts without a task around them: the mapper reads its records from
+// an array, the reducer iterates a pre-sorted, pre-serialized shuffle, and
+// every output record goes to a Blackhole. Counters work as in a task and
+// can be inspected afterwards. Built on the same MapContextImpl /
+// ReduceContextImpl the framework uses, so the code under test runs the
+// real value iteration and deserialization.
+final class StubContexts {
+
+    private StubContexts() {
+    }
+
+    static final class Reporter extends StatusReporter {
+        final Counters counters = new Counters();
+
+        public Counter getCounter(Enum<?> name) {
+            return counters.findCounter(name);
+        }
+
+        public Counter getCounter(String group, String name) {
+            return counters.findCounter(group, name);
+        }
+
+        public void progress() {
+        }
+
+        public float getProgress() {
+            return 0;
+        }
+
+        public void setStatus(String status) {
+        }
+    }
+
+    static final class BlackholeWriter<K, V> extends RecordWriter<K, V> {
+        private final Blackhole bh;
+
+        BlackholeWriter(Blackhole bh) {
+            this.bh = bh;
+        }
+
+        public void write(K key, V value) {
+            bh.consume(key);
+            bh.consume(value);
+        }
+
+        public void close(TaskAttemptContext context) {
+        }
+    }
+
+    // The values in order, keyed by their index like byte offsets of a line reader
+    static final class ArrayReader<V> extends RecordReader<LongWritable, V> {
+        private final V[] values;
+        private final LongWritable key = new LongWritable();
+        private int next;
+
+        ArrayReader(V[] values) {
+            this.values = values;
+        }
+
+        public void initialize(InputSplit split, TaskAttemptContext context) {
+            next = 0;
+        }
+
+        public boolean nextKeyValue() {
+            if (next == values.length) {
+                return false;
+            }
+            key.set(next++);
+            return true;
+        }
+
+        public LongWritable getCurrentKey() {
+            return key;
+        }
+
+        public V getCurrentValue() {
+            return values[next - 1];
+        }
+
+        public float getProgress() {
+            return values.length == 0 ? 1 : (float) next / values.length;
+        }
+
+        public void close() {
+        }
+    }
+
+    static TaskAttemptID attempt(TaskType type) {
+        return new TaskAttemptID("bench", 1, type, 0, 0);
+    }
+
+    static <V, KO, VO> Mapper<Object, V, KO, VO>.Context mapContext(Mapper<Object, V, KO, VO> mapper,
+            Configuration conf, V[] values, Reporter reporter, Blackhole bh) {
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        MapContextImpl<Object, V, KO, VO> context = new MapContextImpl(conf, attempt(TaskType.MAP),
+                new ArrayReader<V>(values), new BlackholeWriter<KO, VO>(bh), null, reporter, null);
+        return new WrappedMapper<Object, V, KO, VO>().getMapContext(context);
+    }
+
+    // Map output as the reducer receives it: serialized and sorted by key
+    static final class Shuffle {
+        final Class<?> keyClass;
+        final Class<?> valueClass;
+        final RawComparator<?> comparator;
+        private final byte[][] keys;
+        private final byte[][] values;
+
+        <K extends WritableComparable<?>> Shuffle(Class<K> keyClass, Class<?> valueClass, List<K> keys,
+                List<? extends Writable> values) throws IOException {
+            this.keyClass = keyClass;
+            this.valueClass = valueClass;
+            final RawComparator<?> comparator = WritableComparator.get(keyClass.asSubclass(WritableComparable.class));
+            this.comparator = comparator;
+
+            final byte[][] k = new byte[keys.size()][];
+            byte[][] v = new byte[keys.size()][];
+            DataOutputBuffer out = new DataOutputBuffer();
+            for (int i = 0; i < k.length; i++) {
+                out.reset();
+                keys.get(i).write(out);
+                k[i] = Arrays.copyOf(out.getData(), out.getLength());
+                out.reset();
+                values.get(i).write(out);
+                v[i] = Arrays.copyOf(out.getData(), out.getLength());
+            }
+
+            // stable, like the merge of sorted spills
+            Integer[] order = new Integer[k.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+                public int compare(Integer a, Integer b) {
+                    return comparator.compare(k[a], 0, k[a].length, k[b], 0, k[b].length);
+                }
+            });
+            this.keys = new byte[k.length][];
+            this.values = new byte[k.length][];
+            for (int i = 0; i < order.length; i++) {
+                this.keys[i] = k[order[i]];
+                this.values[i] = v[order[i]];
+            }
+        }
+
+        int size() {
+            return keys.length;
+        }
+
+        RawKeyValueIterator iterator() {
+            return new RawKeyValueIterator() {
+                private final DataInputBuffer key = new DataInputBuffer();
+                private final DataInputBuffer value = new DataInputBuffer();
+                private final Progress progress = new Progress();
+                private int next;
+
+                public DataInputBuffer getKey() {
+                    return key;
+                }
+
+                public DataInputBuffer getValue() {
+                    return value;
+                }
+
+                public boolean next() {
+                    if (next == keys.length) {
+                        return false;
+                    }
+                    key.reset(keys[next], keys[next].length);
+                    value.reset(values[next], values[next].length);
+                    next++;
+                    return true;
+                }
+
+                public void close() {
+                }
+
+                public Progress getProgress() {
+                    return progress;
+                }
+            };
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static <K, V, KO, VO> Reducer<K, V, KO, VO>.Context reduceContext(Reducer<K, V, KO, VO> reducer,
+            Configuration conf, Shuffle shuffle, Reporter reporter, Blackhole bh)
+            throws IOException, InterruptedException {
+        ReduceContextImpl<K, V, KO, VO> context = new ReduceContextImpl(conf, attempt(TaskType.REDUCE),
+                shuffle.iterator(), reporter.getCounter("bench", "reduce_input_keys"),
+                reporter.getCounter("bench", "reduce_input_values"), new BlackholeWriter<KO, VO>(bh), null,
+                reporter, shuffle.comparator, shuffle.keyClass, shuffle.valueClass);
+        return new WrappedReducer<K, V, KO, VO>().getReducerContext(context);
+    }
+}
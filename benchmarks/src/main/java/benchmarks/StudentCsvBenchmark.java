@@ -0,0 +1,107 @@
+package benchmarks;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.Mapper;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.TextOutputFormat;
+import org.apache.hadoop.mapred.lib.MultipleOutputs;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+import org.apache.hadoop.mapreduce.TaskType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// KMeansCSVWithCentroid's old API mapper on "ID,math,science,english" rows,
+// always three scores. One invocation is one task: configure(), every row
+// through map(), then close(). The member list goes to a real "members" file
+// in a temporary directory, as it would in the job.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class StudentCsvBenchmark {
+
+    static final int STUDENTS = 50000;
+
+    @Param({"3", "16"})
+    public int k;
+
+    @Param("42")
+    public long seed;
+
+    private File dir;
+    private JobConf job;
+    private Text[] rows;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        Random random = new Random(seed);
+        double[][] centres = Generators.centres(random, k, 3);
+        rows = Generators.csv(Generators.points(random, centres, STUDENTS, 5), "S");
+
+        dir = Files.createTempDirectory("student-bench").toFile();
+        job = new JobConf();
+        Path centroids = KMeansBenchmark.writeCentroids(job, dir, Generators.perturb(random, centres, 1));
+        job.set(MRJobConfig.CACHE_FILES, centroids.toUri().toString());
+        MultipleOutputs.addNamedOutput(job, "members", TextOutputFormat.class, Text.class, IntWritable.class);
+        Path out = new Path(dir.toURI().toString(), "out");
+        FileOutputFormat.setOutputPath(job, out);
+        // what the task's committer would set: side files go straight to the output directory
+        FileOutputFormat.setWorkOutputPath(job, out);
+        job.set(MRJobConfig.TASK_ATTEMPT_ID, StubContexts.attempt(TaskType.MAP).toString());
+        job.setInt(MRJobConfig.TASK_PARTITION, 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        FileUtil.fullyDelete(dir);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(STUDENTS)
+    public void csvMapper(final Blackhole bh) throws Exception {
+        Mapper<Object, Text, IntWritable, Writable> mapper = Repo.newInstance("KMeansCSVWithCentroid$KMeansMapper", job);
+        OutputCollector<IntWritable, Writable> output = new OutputCollector<IntWritable, Writable>() {
+            public void collect(IntWritable key, Writable value) {
+                bh.consume(key);
+                bh.consume(value);
+            }
+        };
+        LongWritable offset = new LongWritable();
+        try {
+            for (int i = 0; i < rows.length; i++) {
+                offset.set(i);
+                mapper.map(offset, rows[i], output, Reporter.NULL);
+            }
+        } finally {
+            mapper.close();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// WordCount's map and reduce over a seeded Zipf corpus. One invocation is
+// one task over the whole corpus, setup() and cleanup() included; the score
+// is words per second. A flatter vocabulary (low skew, large vocabulary)
+// makes the in-mapper table bigger and its flushes larger.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class WordCountBenchmark {
+
+    static final int LINES = 20000;
+    static final int WORDS_PER_LINE = 10;
+
+    @Param({"1000", "100000"})
+    public int vocabulary;
+
+    @Param({"0.8", "1.2"})
+    public double skew;
+
+    @Param("42")
+    public long seed;
+
+    private Configuration conf;
+    private Text[] corpus;
+    private StubContexts.Shuffle shuffle;
+    private Mapper<Object, Text, Text, IntWritable> mapper;
+    private Mapper<Object, Text, Text, IntWritable> aggregatingMapper;
+    private Reducer<Text, IntWritable, Text, IntWritable> reducer;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        conf = new Configuration();
+        corpus = Generators.zipfCorpus(seed, vocabulary, skew, LINES, WORDS_PER_LINE);
+        mapper = Repo.newInstance("WordCount$MyMapper", conf);
+        aggregatingMapper = Repo.newInstance("WordCount$MyAggregatingMapper", conf);
+        reducer = Repo.newInstance("WordCount$MyReducer", conf);
+
+        // What the reducer would get without a combiner: (word, 1) per word
+        List<Text> words = new ArrayList<Text>();
+        List<IntWritable> ones = new ArrayList<IntWritable>();
+        IntWritable one = new IntWritable(1);
+        for (Text line : corpus) {
+            for (String word : line.toString().split(" ")) {
+                words.add(new Text(word));
+                ones.add(one);
+            }
+        }
+        shuffle = new StubContexts.Shuffle(Text.class, IntWritable.class, words, ones);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES * WORDS_PER_LINE)
+    public StubContexts.Reporter map(Blackhole bh) throws Exception {
+        StubContexts.Reporter reporter = new StubContexts.Reporter();
+        mapper.run(StubContexts.mapContext(mapper, conf, corpus, reporter, bh));
+        return reporter;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES * WORDS_PER_LINE)
+    public StubContexts.Reporter inMapperCombining(Blackhole bh) throws Exception {
+        StubContexts.Reporter reporter = new StubContexts.Reporter();
+        aggregatingMapper.run(StubContexts.mapContext(aggregatingMapper, conf, corpus, reporter, bh));
+        return reporter;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES * WORDS_PER_LINE)
+    public StubContexts.Reporter reduce(Blackhole bh) throws Exception {
+        StubContexts.Reporter reporter = new StubContexts.Reporter();
+        reducer.run(StubContexts.reduceContext(reducer, conf, shuffle, reporter, bh));
+        return reporter;
+    }
+}